@@ -0,0 +1,25 @@
+package de.philippbomers.management.students.student_manager.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the batch endpoint for allocations, configured with the prefix
+ * "student-manager.allocation-batch"
+ * <p>
+ * Getters and Setters are handled by Lombok
+ */
+@Component
+@ConfigurationProperties(prefix = "student-manager.allocation-batch")
+@Getter
+@Setter
+public class AllocationBatchProperties {
+
+    /**
+     * Number of allocations that one request can add. All of them are saved in one transaction,
+     * so the inserts are sent in JDBC batches.
+     */
+    private int maxSize = 1000;
+}
@@ -0,0 +1,54 @@
+package de.philippbomers.management.students.student_manager.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the file import, configured with the prefix "student-manager.import"
+ * <p>
+ * Getters and Setters are handled by Lombok
+ */
+@Component
+@ConfigurationProperties(prefix = "student-manager.import")
+@Getter
+@Setter
+public class ImportProperties {
+
+    /**
+     * Number of rows that are saved in one transaction. Inserts of a chunk are sent to the
+     * database in JDBC batches.
+     */
+    private int chunkSize = 500;
+
+    /**
+     * Number of import jobs that run at the same time
+     */
+    private int maxConcurrentJobs = 2;
+
+    /**
+     * Number of import jobs that can wait for a free slot. Further jobs are rejected.
+     */
+    private int maxQueuedJobs = 10;
+
+    /**
+     * How long finished import jobs can be polled
+     */
+    private Duration jobRetention = Duration.ofHours(1);
+
+    /**
+     * Number of sheets of one workbook that are imported at the same time. Each sheet uses one
+     * database connection while it saves a chunk.
+     */
+    private int sheetParallelism = 4;
+
+    /**
+     * Directory for uploads that have to be saved as a file before the import. Each upload gets
+     * its own file, which is deleted when the import is done.
+     */
+    private Path spoolDirectory = Path.of(System.getProperty("java.io.tmpdir"), "student-manager-import");
+}
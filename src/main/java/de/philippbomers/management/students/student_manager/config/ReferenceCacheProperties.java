@@ -0,0 +1,32 @@
+package de.philippbomers.management.students.student_manager.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the caches for employments and projects, configured with the prefix
+ * "student-manager.reference-cache"
+ * <p>
+ * Getters and Setters are handled by Lombok
+ */
+@Component
+@ConfigurationProperties(prefix = "student-manager.reference-cache")
+@Getter
+@Setter
+public class ReferenceCacheProperties {
+
+    /**
+     * Number of entities that each cache holds. The least used entities are evicted first.
+     */
+    private long maximumSize = 1000;
+
+    /**
+     * How long an entity stays cached after it was loaded. Changes through the services are seen
+     * at once, the time only limits how long changes from outside the application stay hidden.
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+}
@@ -1,14 +1,22 @@
 package de.philippbomers.management.students.student_manager.controller;
 
+import de.philippbomers.management.students.student_manager.config.AllocationBatchProperties;
 import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.service.AllocationBatchResult;
+import de.philippbomers.management.students.student_manager.service.AllocationBatchService;
 import de.philippbomers.management.students.student_manager.service.AllocationService;
+import de.philippbomers.management.students.student_manager.service.CoalescingStatistics;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * API Rest Controller to handle allocations
@@ -21,19 +29,105 @@ public class AllocationController {
 
     private final AllocationService allocationService;
 
-    public AllocationController(AllocationService allocationService) {
+    private final AllocationBatchService allocationBatchService;
+
+    private final StreamingJsonWriter streamingJsonWriter;
+
+    private final AllocationBatchProperties allocationBatchProperties;
+
+    public AllocationController(AllocationService allocationService, AllocationBatchService allocationBatchService, StreamingJsonWriter streamingJsonWriter, AllocationBatchProperties allocationBatchProperties) {
         this.allocationService = allocationService;
+        this.allocationBatchService = allocationBatchService;
+        this.streamingJsonWriter = streamingJsonWriter;
+        this.allocationBatchProperties = allocationBatchProperties;
     }
 
     /**
-     * Shows all allocations or throws a 409 Status
+     * Shows all allocations or throws a 409 Status. The allocations are not read again if the
+     * client has them already, and concurrent requests share one query.
      *
-     * @return List with allocations
+     * @param ifNoneMatch entity tag of the allocations that the client has
+     * @return List with allocations or a 304 Status
      */
     @GetMapping
-    public List<Allocation> getAllocations() throws ResponseStatusException {
+    public ResponseEntity<List<Allocation>> getAllocations(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
+        try {
+            return EntityTags.respond(this.allocationService.getAllocationsTag(), ifNoneMatch,
+                    this.allocationService::getSharedAllocations);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting allocations");
+        }
+    }
+
+    /**
+     * Shows a page of allocations or throws a 400 Status if the limit is invalid. Use the ID of the
+     * last allocation as "after" to get the next page.
+     *
+     * @param after ID of the last allocation of the previous page, 0 (default) for the first page
+     * @param limit maximum number of allocations, between 1 and 1000
+     * @return List with allocations ordered by ID
+     */
+    @GetMapping(params = {"limit", "stream!=true"})
+    public List<Allocation> getAllocations(@RequestParam(value = "after", defaultValue = "0") final long after,
+                                           @RequestParam("limit") final int limit) throws ResponseStatusException {
+        Pagination.checkLimit(limit);
+        try {
+            return this.allocationService.getAllocations(after, limit);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting allocations");
+        }
+    }
+
+    /**
+     * Shows all allocations. The JSON array is written while the allocations are read from the database,
+     * so the allocations are never loaded at once.
+     *
+     * @return JSON array with allocations ordered by ID
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllocations() {
+        return this.streamingJsonWriter.writeArray(this.allocationService::streamAllAllocations);
+    }
+
+    /**
+     * Shows how many requests for all allocations shared the query of another request
+     *
+     * @return CoalescingStatistics of the reads of all allocations
+     */
+    @GetMapping(value = "/coalescing-statistics")
+    public CoalescingStatistics getCoalescingStatistics() {
+        return this.allocationService.getCoalescingStatistics();
+    }
+
+    /**
+     * Shows the allocations of a student or a project that overlap a period or throws a 400 Status
+     * if the parameters are invalid. Periods overlap if they have at least one day in common.
+     *
+     * @param student ID of student, if project is not given
+     * @param project ID of project, if student is not given
+     * @param from    first day of the period
+     * @param to      last day of the period
+     * @return List with the overlapping allocations ordered by begin
+     */
+    @GetMapping(value = "/overlaps")
+    public List<Allocation> getOverlappingAllocations(@RequestParam(value = "student", required = false) final Long student,
+                                                      @RequestParam(value = "project", required = false) final Long project,
+                                                      @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate from,
+                                                      @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate to) throws ResponseStatusException {
+        if ((student == null) == (project == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Please select either a student or a project");
+        }
+        if (from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The period must not end before it begins");
+        }
         try {
-            return this.allocationService.getAllAllocations();
+            return student != null
+                    ? this.allocationService.getStudentOverlaps(student, from, to)
+                    : this.allocationService.getProjectOverlaps(project, from, to);
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     "There was an issue in getting allocations");
@@ -41,15 +135,19 @@ public class AllocationController {
     }
 
     /**
-     * Shows allocations by ID or throws a 404 Status
+     * Shows allocations by ID or throws a 404 Status. The allocation is not read again if the
+     * client has it already.
      *
-     * @param id allocation ID
-     * @return Allocation
+     * @param id          allocation ID
+     * @param ifNoneMatch entity tag of the allocation that the client has
+     * @return Allocation or a 304 Status
      */
     @GetMapping(value = "/{id}")
-    public Allocation getAllocation(@PathVariable final Long id) throws ResponseStatusException {
+    public ResponseEntity<Allocation> getAllocation(@PathVariable final Long id,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.allocationService.getAllocation(id).orElseThrow();
+            return EntityTags.respondWithEntity(this.allocationService.getAllocationTag(id),
+                    ifNoneMatch, () -> this.allocationService.getAllocation(id).orElseThrow());
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Allocation not found");
         }
@@ -79,6 +177,28 @@ public class AllocationController {
         }
     }
 
+    /**
+     * Adds many allocations in one transaction or throws a 400 Status if the batch is empty or too
+     * large. Invalid allocations do not stop the others, their issues are part of the result.
+     *
+     * @param allocations the allocations to add, at most the configured maximum size of a batch
+     * @return List with one result per allocation, in the same order
+     */
+    @PutMapping(value = "/batch")
+    public List<AllocationBatchResult> addAllocations(@RequestBody final List<Allocation> allocations) throws ResponseStatusException {
+        final int maxSize = this.allocationBatchProperties.getMaxSize();
+        if (allocations.isEmpty() || allocations.size() > maxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "A batch must have between 1 and " + maxSize + " allocations");
+        }
+        try {
+            return this.allocationBatchService.addAllocations(allocations);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Could not create allocations: " + e);
+        }
+    }
+
     /**
      * Edits an allocation or throws a 409 Status
      *
@@ -88,13 +208,7 @@ public class AllocationController {
     @PatchMapping
     public Allocation editAllocation(@Valid @RequestBody final Allocation allocation) throws ResponseStatusException {
         try {
-            this.allocationService.getAllocation(allocation.getId()).orElseThrow();
-            final AtomicReference<Allocation> alloc = new AtomicReference<>(this.allocationService.setAllocation(allocation));
-            if (alloc.get() == null) {
-                throw new ResponseStatusException(HttpStatus.CONFLICT,
-                        "Please check the time periods");
-            }
-            return alloc.get();
+            return this.allocationService.editAllocation(allocation).orElseThrow();
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Could not update allocation");
         }
@@ -1,10 +1,14 @@
 package de.philippbomers.management.students.student_manager.controller;
 
 import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.service.CacheStatistics;
 import de.philippbomers.management.students.student_manager.service.EmploymentService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -20,19 +24,45 @@ public class EmploymentController {
 
     private final EmploymentService employmentService;
 
-    public EmploymentController(EmploymentService employmentService) {
+    private final StreamingJsonWriter streamingJsonWriter;
+
+    public EmploymentController(EmploymentService employmentService, StreamingJsonWriter streamingJsonWriter) {
         this.employmentService = employmentService;
+        this.streamingJsonWriter = streamingJsonWriter;
     }
 
     /**
-     * Shows all employments or throws a 409 Status
+     * Shows all employments or throws a 409 Status. The JSON is sent from a snapshot, which is only
+     * built again after a write, and is not sent again if the client has it already.
      *
-     * @return List with employments
+     * @param ifNoneMatch entity tag of the employments that the client has
+     * @return JSON array with employments or a 304 Status
      */
     @GetMapping
-    public List<Employment> getEmployments() throws ResponseStatusException {
+    public ResponseEntity<byte[]> getEmployments(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
+        try {
+            return EntityTags.respondWithSnapshot(this.employmentService.getEmploymentsTag(),
+                    ifNoneMatch, this.employmentService::getEmploymentSnapshot);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting employments");
+        }
+    }
+
+    /**
+     * Shows a page of employments or throws a 400 Status if the limit is invalid. Use the ID of the
+     * last employment as "after" to get the next page.
+     *
+     * @param after ID of the last employment of the previous page, 0 (default) for the first page
+     * @param limit maximum number of employments, between 1 and 1000
+     * @return List with employments ordered by ID
+     */
+    @GetMapping(params = {"limit", "stream!=true"})
+    public List<Employment> getEmployments(@RequestParam(value = "after", defaultValue = "0") final long after,
+                                           @RequestParam("limit") final int limit) throws ResponseStatusException {
+        Pagination.checkLimit(limit);
         try {
-            return this.employmentService.getAllEmployments();
+            return this.employmentService.getEmployments(after, limit);
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     "There was an issue in getting employments");
@@ -40,15 +70,40 @@ public class EmploymentController {
     }
 
     /**
-     * Shows employment by ID or throws a 404 Status
+     * Shows all employments. The JSON array is written while the employments are read from the database,
+     * so the employments are never loaded at once.
      *
-     * @param id of employment
-     * @return Employment
+     * @return JSON array with employments ordered by ID
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamEmployments() {
+        return this.streamingJsonWriter.writeArray(this.employmentService::streamAllEmployments);
+    }
+
+    /**
+     * Shows how often employments were read from the cache instead of the database
+     *
+     * @return CacheStatistics of the employment cache
+     */
+    @GetMapping(value = "/cache-statistics")
+    public CacheStatistics getCacheStatistics() {
+        return this.employmentService.getCacheStatistics();
+    }
+
+    /**
+     * Shows employment by ID or throws a 404 Status. The employment is not read again if the client
+     * has it already.
+     *
+     * @param id          of employment
+     * @param ifNoneMatch entity tag of the employment that the client has
+     * @return Employment or a 304 Status
      */
     @GetMapping(value = "/{id}")
-    public Employment getEmployment(@PathVariable final Long id) throws ResponseStatusException {
+    public ResponseEntity<Employment> getEmployment(@PathVariable final Long id,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.employmentService.getEmployment(id).orElseThrow();
+            return EntityTags.respondWithEntity(this.employmentService.getEmploymentTag(id),
+                    ifNoneMatch, () -> this.employmentService.getEmployment(id).orElseThrow());
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Employment not found");
         }
@@ -82,8 +137,7 @@ public class EmploymentController {
     @PatchMapping
     public Employment editEmployment(@Valid @RequestBody final Employment employment) throws ResponseStatusException {
         try {
-            this.employmentService.getEmployment(employment.getId()).orElseThrow();
-            return this.employmentService.setEmployment(employment);
+            return this.employmentService.editEmployment(employment).orElseThrow();
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Could not update employment");
         }
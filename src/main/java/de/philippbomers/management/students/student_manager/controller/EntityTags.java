@@ -0,0 +1,84 @@
+package de.philippbomers.management.students.student_manager.controller;
+
+import de.philippbomers.management.students.student_manager.service.ListSnapshot;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Answers GET requests with an entity tag, so clients can ask with "If-None-Match" whether the
+ * data changed. The services build the tags from version counters, so an unchanged answer is
+ * sent without a query.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @param etag        current entity tag, read before the body
+     * @param ifNoneMatch entity tags that the client already has, can be null
+     * @param body        reads the body, only if the client does not have it
+     * @return response with the body or a 304 Status if the client has it already
+     */
+    static <T> ResponseEntity<T> respond(final String etag, final String ifNoneMatch,
+                                         final Supplier<T> body) {
+        if (matches(etag, ifNoneMatch, true)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+
+    /**
+     * Like respond, but for a single entity. The tag of an entity does not tell if it exists, so
+     * "*" is ignored and a missing entity is still reported by the body.
+     *
+     * @param etag        current entity tag, read before the body
+     * @param ifNoneMatch entity tags that the client already has, can be null
+     * @param body        reads the entity, only if the client does not have it
+     * @return response with the entity or a 304 Status if the client has it already
+     */
+    static <T> ResponseEntity<T> respondWithEntity(final String etag, final String ifNoneMatch,
+                                                   final Supplier<T> body) {
+        if (matches(etag, ifNoneMatch, false)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+
+    /**
+     * @param etag        current entity tag of the list
+     * @param ifNoneMatch entity tags that the client already has, can be null
+     * @param snapshot    reads the snapshot, only if the client does not have it
+     * @return response with the JSON of the snapshot or a 304 Status if the client has it already
+     */
+    static ResponseEntity<byte[]> respondWithSnapshot(final String etag, final String ifNoneMatch,
+                                                      final Supplier<ListSnapshot> snapshot) {
+        if (matches(etag, ifNoneMatch, true)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        // The snapshot can be newer than the tag, so it is sent with its own tag
+        final ListSnapshot current = snapshot.get();
+        return ResponseEntity.ok().eTag(current.etag()).contentType(MediaType.APPLICATION_JSON)
+                .body(current.json());
+    }
+
+    /**
+     * Compares the entity tags weakly, as required for "If-None-Match"
+     *
+     * @param wildcard whether "*" matches, which is only true if the resource exists
+     */
+    private static boolean matches(final String etag, final String ifNoneMatch,
+                                   final boolean wildcard) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(",")).map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> (wildcard && tag.equals("*")) || tag.equals(etag));
+    }
+}
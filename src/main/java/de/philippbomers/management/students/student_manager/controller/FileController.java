@@ -1,14 +1,22 @@
 package de.philippbomers.management.students.student_manager.controller;
 
 import de.philippbomers.management.students.student_manager.service.FileService;
+import de.philippbomers.management.students.student_manager.service.ImportJob;
+import de.philippbomers.management.students.student_manager.service.ImportJobService;
 import org.springframework.boot.configurationprocessor.json.JSONObject;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * API Rest Controller to handle file uploads
@@ -21,20 +29,27 @@ public class FileController {
 
     private final FileService fileService;
 
-    public FileController(FileService fileService) {
+    private final ImportJobService importJobService;
+
+    public FileController(FileService fileService, ImportJobService importJobService) {
         this.fileService = fileService;
+        this.importJobService = importJobService;
     }
 
     /**
      * Uploads an Excel file and save content to database
      *
-     * @param file .xlsx MultipartFile
+     * @param file      .xlsx MultipartFile
+     * @param streaming true (default) to read the file row by row, false to load the whole
+     *                  workbook into memory
      * @return String with report of data saving
      */
     @PostMapping
-    public String uploadExcelFile(@RequestParam("file") final MultipartFile file) throws ResponseStatusException {
+    public String uploadExcelFile(@RequestParam("file") final MultipartFile file,
+                                  @RequestParam(value = "streaming", defaultValue = "true") final boolean streaming)
+            throws ResponseStatusException {
         try {
-            final String result = this.fileService.importExcelFile(file);
+            final String result = this.fileService.importExcelFile(file, streaming);
 
             // the string must be converted into JSON object
             return JSONObject.quote(result);
@@ -42,4 +57,127 @@ public class FileController {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload failed");
         }
     }
+
+    /**
+     * Imports a CSV or TSV file from the request body and save content to database. The body is
+     * read while it is uploaded, so the file is not limited by the multipart file size.
+     *
+     * @param body   CSV or TSV file in UTF-8 with the same columns as the Excel file and dates in
+     *               the format yyyy-MM-dd
+     * @param format "csv" (default) for comma separated or "tsv" for tab separated values
+     * @return String with report of data saving
+     */
+    @PostMapping(value = "/csv", consumes = {"text/csv", "text/tab-separated-values",
+            MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public String uploadCsvFile(final InputStream body,
+                                @RequestParam(value = "format", defaultValue = "csv") final String format)
+            throws ResponseStatusException {
+        final char delimiter = switch (format) {
+            case "csv" -> ',';
+            case "tsv" -> '\t';
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Please choose the format csv or tsv");
+        };
+
+        try {
+            final String result = this.fileService.importCsvFile(body, delimiter);
+
+            // the string must be converted into JSON object
+            return JSONObject.quote(result);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload failed");
+        }
+    }
+
+    /**
+     * Uploads an Excel file with several sheets and saves the content of the sheets in parallel
+     *
+     * @param file   .xlsx MultipartFile
+     * @param sheets numbers of the sheets, beginning by 0. All sheets if not set.
+     * @return String with report of data saving for each sheet
+     */
+    @PostMapping(value = "/sheets")
+    public String uploadExcelSheets(@RequestParam("file") final MultipartFile file,
+                                    @RequestParam(value = "sheets", required = false) final List<Integer> sheets)
+            throws ResponseStatusException {
+        try {
+            final String result = this.fileService.importExcelSheets(file, sheets, 1, 0);
+
+            // the string must be converted into JSON object
+            return JSONObject.quote(result);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload failed");
+        }
+    }
+
+    /**
+     * Downloads all allocations as an Excel file with the same table structure as the upload. The
+     * file is written while it is downloaded.
+     *
+     * @return .xlsx file
+     */
+    @GetMapping(value = "/export")
+    public ResponseEntity<StreamingResponseBody> exportExcelFile() {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("allocations.xlsx").build().toString())
+                .contentType(MediaType.parseMediaType(
+                        "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(this.fileService::exportExcelFile);
+    }
+
+    /**
+     * Uploads an Excel file and imports it in the background or throws a 503 Status if too many
+     * imports are running
+     *
+     * @param file      .xlsx MultipartFile
+     * @param streaming true (default) to read the file row by row, false to load the whole
+     *                  workbook into memory
+     * @return the queued job. Poll it with its ID for the progress and the report.
+     */
+    @PostMapping(value = "/jobs")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ImportJob submitImportJob(@RequestParam("file") final MultipartFile file,
+                                     @RequestParam(value = "streaming", defaultValue = "true") final boolean streaming)
+            throws ResponseStatusException {
+        try {
+            return this.importJobService.submitJob(file, streaming);
+        } catch (final RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many imports are running, please try again later");
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload failed");
+        }
+    }
+
+    /**
+     * Shows an import job or throws a 404 Status
+     *
+     * @param id of job
+     * @return ImportJob with progress and report
+     */
+    @GetMapping(value = "/jobs/{id}")
+    public ImportJob getImportJob(@PathVariable final String id) throws ResponseStatusException {
+        try {
+            return this.importJobService.getJob(id).orElseThrow();
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found");
+        }
+    }
+
+    /**
+     * Cancels an import job or throws a 404 Status. Rows that are already saved stay in the
+     * database.
+     *
+     * @param id of job to cancel
+     * @return the cancelled job
+     */
+    @DeleteMapping(value = "/jobs/{id}")
+    public ImportJob cancelImportJob(@PathVariable final String id) throws ResponseStatusException {
+        try {
+            return this.importJobService.cancelJob(id).orElseThrow();
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found");
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package de.philippbomers.management.students.student_manager.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Checks the parameters of the keyset pagination of the list endpoints
+ * <p>
+ * Pages are selected by the ID of the last entity of the previous page ("after") instead of an
+ * offset, so the database can use the primary key index and does not have to skip rows.
+ */
+final class Pagination {
+
+    // Maximum number of entities of one page
+    static final int MAX_LIMIT = 1000;
+
+    private Pagination() {
+    }
+
+    /**
+     * @param limit number of entities of the page
+     * @throws ResponseStatusException with 400 Status if the limit is invalid
+     */
+    static void checkLimit(final int limit) throws ResponseStatusException {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The limit must be between 1 and " + MAX_LIMIT);
+        }
+    }
+}
@@ -2,9 +2,12 @@ package de.philippbomers.management.students.student_manager.controller;
 
 import de.philippbomers.management.students.student_manager.entity.Period;
 import de.philippbomers.management.students.student_manager.service.PeriodService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -20,19 +23,25 @@ public class PeriodController {
 
     private final PeriodService periodService;
 
-    public PeriodController(PeriodService periodService) {
+    private final StreamingJsonWriter streamingJsonWriter;
+
+    public PeriodController(PeriodService periodService, StreamingJsonWriter streamingJsonWriter) {
         this.periodService = periodService;
+        this.streamingJsonWriter = streamingJsonWriter;
     }
 
     /**
-     * Shows all periods or throws a 409 Status
+     * Shows all periods or throws a 409 Status. The periods are not read again if the client has
+     * them already.
      *
-     * @return List with periods
+     * @param ifNoneMatch entity tag of the periods that the client has
+     * @return List with periods or a 304 Status
      */
     @GetMapping
-    public List<Period> getPeriods() throws ResponseStatusException {
+    public ResponseEntity<List<Period>> getPeriods(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.periodService.getAllPeriods();
+            return EntityTags.respond(this.periodService.getPeriodsTag(), ifNoneMatch,
+                    this.periodService::getAllPeriods);
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     "There was an issue in getting periods");
@@ -40,15 +49,50 @@ public class PeriodController {
     }
 
     /**
-     * Shows period by ID or throws a 404 Status
+     * Shows a page of periods or throws a 400 Status if the limit is invalid. Use the ID of the
+     * last period as "after" to get the next page.
      *
-     * @param id of period
-     * @return Period
+     * @param after ID of the last period of the previous page, 0 (default) for the first page
+     * @param limit maximum number of periods, between 1 and 1000
+     * @return List with periods ordered by ID
+     */
+    @GetMapping(params = {"limit", "stream!=true"})
+    public List<Period> getPeriods(@RequestParam(value = "after", defaultValue = "0") final long after,
+                                   @RequestParam("limit") final int limit) throws ResponseStatusException {
+        Pagination.checkLimit(limit);
+        try {
+            return this.periodService.getPeriods(after, limit);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting periods");
+        }
+    }
+
+    /**
+     * Shows all periods. The JSON array is written while the periods are read from the database,
+     * so the periods are never loaded at once.
+     *
+     * @return JSON array with periods ordered by ID
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamPeriods() {
+        return this.streamingJsonWriter.writeArray(this.periodService::streamAllPeriods);
+    }
+
+    /**
+     * Shows period by ID or throws a 404 Status. The period is not read again if the client has it
+     * already.
+     *
+     * @param id          of period
+     * @param ifNoneMatch entity tag of the period that the client has
+     * @return Period or a 304 Status
      */
     @GetMapping(value = "/{id}")
-    public Period getPeriod(@PathVariable final Long id) throws ResponseStatusException {
+    public ResponseEntity<Period> getPeriod(@PathVariable final Long id,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.periodService.getPeriod(id).orElseThrow();
+            return EntityTags.respondWithEntity(this.periodService.getPeriodTag(id),
+                    ifNoneMatch, () -> this.periodService.getPeriod(id).orElseThrow());
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Period not found");
         }
@@ -81,8 +125,7 @@ public class PeriodController {
     @PatchMapping
     public Period editPeriod(@Valid @RequestBody final Period period) throws ResponseStatusException {
         try {
-            this.periodService.getPeriod(period.getId()).orElseThrow();
-            return this.periodService.setPeriod(period);
+            return this.periodService.editPeriod(period).orElseThrow();
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Could not update period: " + e);
         }
@@ -1,12 +1,20 @@
 package de.philippbomers.management.students.student_manager.controller;
 
 import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.service.CacheStatistics;
 import de.philippbomers.management.students.student_manager.service.ProjectService;
+import de.philippbomers.management.students.student_manager.service.Utilization;
+import de.philippbomers.management.students.student_manager.service.UtilizationBucket;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -20,19 +28,45 @@ public class ProjectController {
 
     private final ProjectService projectService;
 
-    public ProjectController(ProjectService projectService) {
+    private final StreamingJsonWriter streamingJsonWriter;
+
+    public ProjectController(ProjectService projectService, StreamingJsonWriter streamingJsonWriter) {
         this.projectService = projectService;
+        this.streamingJsonWriter = streamingJsonWriter;
     }
 
     /**
-     * Shows all projects or throws a 409 Status
+     * Shows all projects or throws a 409 Status. The JSON is sent from a snapshot, which is only
+     * built again after a write, and is not sent again if the client has it already.
      *
-     * @return List with projects
+     * @param ifNoneMatch entity tag of the projects that the client has
+     * @return JSON array with projects or a 304 Status
      */
     @GetMapping
-    public List<Project> getProjects() throws ResponseStatusException {
+    public ResponseEntity<byte[]> getProjects(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
+        try {
+            return EntityTags.respondWithSnapshot(this.projectService.getProjectsTag(),
+                    ifNoneMatch, this.projectService::getProjectSnapshot);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting projects");
+        }
+    }
+
+    /**
+     * Shows a page of projects or throws a 400 Status if the limit is invalid. Use the ID of the
+     * last project as "after" to get the next page.
+     *
+     * @param after ID of the last project of the previous page, 0 (default) for the first page
+     * @param limit maximum number of projects, between 1 and 1000
+     * @return List with projects ordered by ID
+     */
+    @GetMapping(params = {"limit", "stream!=true"})
+    public List<Project> getProjects(@RequestParam(value = "after", defaultValue = "0") final long after,
+                                     @RequestParam("limit") final int limit) throws ResponseStatusException {
+        Pagination.checkLimit(limit);
         try {
-            return this.projectService.getAllProjects();
+            return this.projectService.getProjects(after, limit);
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     "There was an issue in getting projects");
@@ -40,20 +74,70 @@ public class ProjectController {
     }
 
     /**
-     * Shows a project by ID or throws a 404 Status
+     * Shows all projects. The JSON array is written while the projects are read from the database,
+     * so the projects are never loaded at once.
+     *
+     * @return JSON array with projects ordered by ID
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamProjects() {
+        return this.streamingJsonWriter.writeArray(this.projectService::streamAllProjects);
+    }
+
+    /**
+     * Shows how often projects were read from the cache instead of the database
      *
-     * @param id of project
-     * @return Project
+     * @return CacheStatistics of the project cache
+     */
+    @GetMapping(value = "/cache-statistics")
+    public CacheStatistics getCacheStatistics() {
+        return this.projectService.getCacheStatistics();
+    }
+
+    /**
+     * Shows a project by ID or throws a 404 Status. The project is not read again if the client has
+     * it already.
+     *
+     * @param id          of project
+     * @param ifNoneMatch entity tag of the project that the client has
+     * @return Project or a 304 Status
      */
     @GetMapping(value = "/{id}")
-    public Project getProject(@PathVariable final Long id) throws ResponseStatusException {
+    public ResponseEntity<Project> getProject(@PathVariable final Long id,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.projectService.getProject(id).orElseThrow();
+            return EntityTags.respondWithEntity(this.projectService.getProjectTag(id),
+                    ifNoneMatch, () -> this.projectService.getProject(id).orElseThrow());
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Project not found");
         }
     }
 
+    /**
+     * Shows how many allocations a project has per day, week or month or throws a 400 Status if the
+     * parameters are invalid
+     *
+     * @param id     project ID
+     * @param from   first day of the report
+     * @param to     last day of the report, at most {@value Reporting#MAX_DAYS} days after from
+     * @param bucket day (default), week or month. Weeks end on Sunday.
+     * @return List with the utilization of each period
+     */
+    @GetMapping(value = "/{id}/utilization")
+    public List<Utilization> getUtilization(@PathVariable final Long id,
+                                            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate from,
+                                            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate to,
+                                            @RequestParam(value = "bucket", defaultValue = "day") final String bucket) throws ResponseStatusException {
+        Reporting.checkPeriod(from, to);
+        final UtilizationBucket utilizationBucket = Reporting.parseBucket(bucket);
+        try {
+            return this.projectService.getUtilization(id, from, to, utilizationBucket);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting the utilization");
+        }
+    }
+
     /**
      * Add a new project or throws a 409 Status
      *
@@ -81,10 +165,9 @@ public class ProjectController {
     @PatchMapping
     public Project editProject(@Valid @RequestBody final Project project) throws ResponseStatusException {
         try {
-            this.projectService.getProject(project.getId()).orElseThrow();
-            return this.projectService.setProject(project);
+            return this.projectService.editProject(project).orElseThrow();
         } catch (final Exception e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not update project");
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Could not update project");
         }
     }
 
@@ -0,0 +1,51 @@
+package de.philippbomers.management.students.student_manager.controller;
+
+import de.philippbomers.management.students.student_manager.service.UtilizationBucket;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Checks the parameters of the utilization reports
+ */
+final class Reporting {
+
+    // Maximum length of a report in days, about ten years
+    static final int MAX_DAYS = 3660;
+
+    private Reporting() {
+    }
+
+    /**
+     * @param from first day of the report
+     * @param to   last day of the report
+     * @throws ResponseStatusException with 400 Status if the period is invalid or too long
+     */
+    static void checkPeriod(final LocalDate from, final LocalDate to) throws ResponseStatusException {
+        if (from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The period must not end before it begins");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The period must not be longer than " + MAX_DAYS + " days");
+        }
+    }
+
+    /**
+     * @param bucket day, week or month
+     * @return the bucket
+     * @throws ResponseStatusException with 400 Status if the bucket is unknown
+     */
+    static UtilizationBucket parseBucket(final String bucket) throws ResponseStatusException {
+        try {
+            return UtilizationBucket.valueOf(bucket.toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The bucket must be day, week or month");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package de.philippbomers.management.students.student_manager.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes the entities of a database cursor as a JSON array while the response is sent
+ * <p>
+ * Only a few entities are in memory at the same time, so the whole table can be sent without
+ * loading it first.
+ */
+@Component
+class StreamingJsonWriter {
+
+    // Entities that stay in the persistence context before it is cleared
+    private static final int CLEAR_INTERVAL = 500;
+
+    // We use constructor based injection because field based injection is not immutable
+
+    private final ObjectWriter objectWriter;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final EntityManager entityManager;
+
+    StreamingJsonWriter(ObjectMapper objectMapper, PlatformTransactionManager transactionManager, EntityManager entityManager) {
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+
+        // Flushing after each entity would send many small packets
+        this.objectWriter = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        // The cursor needs a transaction in the thread that writes the response
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * @param query opens the cursor. The stream is closed when the response is written.
+     * @param <T>   type of entity
+     * @return response that writes the entities as JSON array
+     */
+    <T> ResponseEntity<StreamingResponseBody> writeArray(final Supplier<Stream<T>> query) {
+        final StreamingResponseBody body = output -> this.readOnlyTransaction
+                .executeWithoutResult(status -> {
+                    try (Stream<T> entities = query.get();
+                         JsonGenerator generator = this.objectMapper.getFactory()
+                                 .createGenerator(output)) {
+                        generator.writeStartArray();
+
+                        final Iterator<T> iterator = entities.iterator();
+                        for (int i = 1; iterator.hasNext(); i++) {
+                            this.objectWriter.writeValue(generator, iterator.next());
+
+                            // Written entities are not needed anymore
+                            if (i % CLEAR_INTERVAL == 0) {
+                                this.entityManager.clear();
+                            }
+                        }
+                        generator.writeEndArray();
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+}
@@ -2,11 +2,18 @@ package de.philippbomers.management.students.student_manager.controller;
 
 import de.philippbomers.management.students.student_manager.entity.Student;
 import de.philippbomers.management.students.student_manager.service.StudentService;
+import de.philippbomers.management.students.student_manager.service.Utilization;
+import de.philippbomers.management.students.student_manager.service.UtilizationBucket;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -20,19 +27,25 @@ public class StudentController {
 
     private final StudentService studentService;
 
-    public StudentController(StudentService studentService) {
+    private final StreamingJsonWriter streamingJsonWriter;
+
+    public StudentController(StudentService studentService, StreamingJsonWriter streamingJsonWriter) {
         this.studentService = studentService;
+        this.streamingJsonWriter = streamingJsonWriter;
     }
 
     /**
-     * Shows all students or throws a 409 Status
+     * Shows all students or throws a 409 Status. The JSON is sent from a snapshot, which is only
+     * built again after a write, and is not sent again if the client has it already.
      *
-     * @return List with students
+     * @param ifNoneMatch entity tag of the students that the client has
+     * @return JSON array with students or a 304 Status
      */
     @GetMapping
-    public List<Student> getStudents() throws ResponseStatusException {
+    public ResponseEntity<byte[]> getStudents(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.studentService.getAllStudents();
+            return EntityTags.respondWithSnapshot(this.studentService.getStudentsTag(),
+                    ifNoneMatch, this.studentService::getStudentSnapshot);
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     "There was an issue in getting students");
@@ -40,20 +53,105 @@ public class StudentController {
     }
 
     /**
-     * Shows student by ID or throws a 404 Status
+     * Shows a page of students or throws a 400 Status if the limit is invalid. Use the ID of the
+     * last student as "after" to get the next page.
      *
-     * @param id of student
-     * @return Student
+     * @param after ID of the last student of the previous page, 0 (default) for the first page
+     * @param limit maximum number of students, between 1 and 1000
+     * @return List with students ordered by ID
+     */
+    @GetMapping(params = {"limit", "stream!=true"})
+    public List<Student> getStudents(@RequestParam(value = "after", defaultValue = "0") final long after,
+                                     @RequestParam("limit") final int limit) throws ResponseStatusException {
+        Pagination.checkLimit(limit);
+        try {
+            return this.studentService.getStudents(after, limit);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting students");
+        }
+    }
+
+    /**
+     * Shows all students. The JSON array is written while the students are read from the database,
+     * so the students are never loaded at once.
+     *
+     * @return JSON array with students ordered by ID
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamStudents() {
+        return this.streamingJsonWriter.writeArray(this.studentService::streamAllStudents);
+    }
+
+    /**
+     * Shows the students that are not allocated on any day of a period or throws a 400 Status if
+     * the period is invalid
+     *
+     * @param from       first day of the period
+     * @param to         last day of the period
+     * @param employment ID of employment to show only its students, optional
+     * @return List with free students ordered by ID
+     */
+    @GetMapping(value = "/available")
+    public List<Student> getAvailableStudents(@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate from,
+                                              @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate to,
+                                              @RequestParam(value = "employment", required = false) final Long employment) throws ResponseStatusException {
+        if (from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The period must not end before it begins");
+        }
+        try {
+            return this.studentService.getAvailableStudents(from, to, employment);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting students");
+        }
+    }
+
+    /**
+     * Shows student by ID or throws a 404 Status. The student is not read again if the client has
+     * it already.
+     *
+     * @param id          of student
+     * @param ifNoneMatch entity tag of the student that the client has
+     * @return Student or a 304 Status
      */
     @GetMapping(value = "/{id}")
-    public Student getStudent(@PathVariable final Long id) throws ResponseStatusException {
+    public ResponseEntity<Student> getStudent(@PathVariable final Long id,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) throws ResponseStatusException {
         try {
-            return this.studentService.getStudent(id).orElseThrow();
+            return EntityTags.respondWithEntity(this.studentService.getStudentTag(id),
+                    ifNoneMatch, () -> this.studentService.getStudent(id).orElseThrow());
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Student not found");
         }
     }
 
+    /**
+     * Shows how many allocations a student has per day, week or month or throws a 400 Status if the
+     * parameters are invalid
+     *
+     * @param id     student ID
+     * @param from   first day of the report
+     * @param to     last day of the report, at most {@value Reporting#MAX_DAYS} days after from
+     * @param bucket day (default), week or month. Weeks end on Sunday.
+     * @return List with the utilization of each period
+     */
+    @GetMapping(value = "/{id}/utilization")
+    public List<Utilization> getUtilization(@PathVariable final Long id,
+                                            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate from,
+                                            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) final LocalDate to,
+                                            @RequestParam(value = "bucket", defaultValue = "day") final String bucket) throws ResponseStatusException {
+        Reporting.checkPeriod(from, to);
+        final UtilizationBucket utilizationBucket = Reporting.parseBucket(bucket);
+        try {
+            return this.studentService.getUtilization(id, from, to, utilizationBucket);
+        } catch (final Exception e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "There was an issue in getting the utilization");
+        }
+    }
+
     /**
      * Add a new student or throws a 409 Status
      *
@@ -81,8 +179,7 @@ public class StudentController {
     @PatchMapping
     public Student editStudent(@Valid @RequestBody final Student student) throws ResponseStatusException {
         try {
-            this.studentService.getStudent(student.getId()).orElseThrow();
-            return this.studentService.setStudent(student);
+            return this.studentService.editStudent(student).orElseThrow();
         } catch (final Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Could not update student");
         }
@@ -1,5 +1,6 @@
 package de.philippbomers.management.students.student_manager.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 import org.hibernate.Hibernate;
 
@@ -13,6 +14,8 @@ import java.util.Objects;
  * Getters, Setters, and Constructors are handled by Lombok
  */
 @Entity
+@Table(indexes = {@Index(name = "idx_allocation_import_hash", columnList = "import_hash"),
+        @Index(name = "idx_allocation_student_project", columnList = "student_id, project_id")})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,9 +24,16 @@ import java.util.Objects;
 public class Allocation {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "allocation_sequence")
+    @SequenceGenerator(name = "allocation_sequence", sequenceName = "allocation_sequence", allocationSize = 50)
     private Long id;
 
+    /**
+     * Version of the allocation, increased by each update
+     */
+    @Version
+    private long version;
+
     /**
      * Each allocation is for one project. But projects can have multiple allocation and students.
      */
@@ -46,6 +56,14 @@ public class Allocation {
     @ManyToOne
     private Student student;
 
+    /**
+     * Hash of the imported row that created the allocation, so the row is skipped when it is
+     * imported again. Allocations that are edited through the API lose their hash.
+     */
+    @JsonIgnore
+    @Column(name = "import_hash", length = 44)
+    private String importHash;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -2,11 +2,18 @@ package de.philippbomers.management.students.student_manager.entity;
 
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
@@ -19,6 +26,9 @@ import java.util.Objects;
  * Getters, Setters, and Constructors are handled by Lombok
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "employment")
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_employment_name", columnNames = "name"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -27,9 +37,16 @@ import java.util.Objects;
 public class Employment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employment_sequence")
+    @SequenceGenerator(name = "employment_sequence", sequenceName = "employment_sequence", allocationSize = 50)
     private Long id;
 
+    /**
+     * Version of the employment, increased by each update so concurrent updates are detected
+     */
+    @Version
+    private long version;
+
     /**
      * The project name
      */
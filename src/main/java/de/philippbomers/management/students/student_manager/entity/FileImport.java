@@ -0,0 +1,61 @@
+package de.philippbomers.management.students.student_manager.entity;
+
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Remembers an imported file, so the same file can be recognized when it is uploaded again
+ * <p>
+ * Getters, Setters, and Constructors are handled by Lombok
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FileImport {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_import_sequence")
+    @SequenceGenerator(name = "file_import_sequence", sequenceName = "file_import_sequence", allocationSize = 50)
+    private Long id;
+
+    /**
+     * SHA-256 hash of the file content and the import settings, encoded in Base64
+     */
+    @Column(unique = true, nullable = false, length = 44)
+    private String hash;
+
+    /**
+     * Report of the import
+     */
+    @Lob
+    private String report;
+
+    private Instant importedAt;
+
+    /**
+     * Entity tag of the allocations after the import. It changes with each write of an allocation
+     * or of the entities it references, so it tells if allocations were added, edited or deleted
+     * since.
+     */
+    private String allocationsTag;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        FileImport that = (FileImport) o;
+        return id != null && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -2,6 +2,8 @@ package de.philippbomers.management.students.student_manager.entity;
 
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
@@ -15,6 +17,8 @@ import java.util.Objects;
  * Getters, Setters, and Constructors are handled by Lombok
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "period")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -23,9 +27,16 @@ import java.util.Objects;
 public class Period {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "period_sequence")
+    @SequenceGenerator(name = "period_sequence", sequenceName = "period_sequence", allocationSize = 50)
     private Long id;
 
+    /**
+     * Version of the period. Each update increases it, so an update based on an old state fails
+     */
+    @Version
+    private long version;
+
     /**
      * Begin of the time period
      */
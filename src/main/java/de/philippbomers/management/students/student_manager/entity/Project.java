@@ -2,6 +2,8 @@ package de.philippbomers.management.students.student_manager.entity;
 
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import javax.validation.constraints.*;
@@ -13,6 +15,9 @@ import java.util.Objects;
  * Getters, Setters, and Constructors are handled by Lombok
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "project")
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_project_name", columnNames = "name"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,9 +26,16 @@ import java.util.Objects;
 public class Project {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "project_sequence")
+    @SequenceGenerator(name = "project_sequence", sequenceName = "project_sequence", allocationSize = 50)
     private Long id;
 
+    /**
+     * Version of the project, increased by each update so concurrent updates are detected
+     */
+    @Version
+    private long version;
+
     /**
      * Project name
      */
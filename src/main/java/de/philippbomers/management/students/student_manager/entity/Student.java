@@ -13,6 +13,8 @@ import java.util.Objects;
  * Getters, Setters, and Constructors are handled by Lombok
  */
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_student_name_employment",
+        columnNames = {"first_name", "last_name", "employment_id"}))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -21,9 +23,16 @@ import java.util.Objects;
 public class Student {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "student_sequence")
+    @SequenceGenerator(name = "student_sequence", sequenceName = "student_sequence", allocationSize = 50)
     private Long id;
 
+    /**
+     * Version of the student, so an edit based on an outdated student is rejected
+     */
+    @Version
+    private long version;
+
     /**
      * Students first name
      */
@@ -32,6 +41,7 @@ public class Student {
     @NotBlank(message = "A first name cannot be blank.")
     @Size(min = 2, max = 32, message = "A first name must have between 2 and 32 characters.")
     @Pattern(regexp = "^[a-zA-Z\\d\s]*", message = "The first name includes invalid letters.")
+    @Column(name = "first_name")
     private String firstName;
 
     /**
@@ -42,6 +52,7 @@ public class Student {
     @NotBlank(message = "A last name cannot be blank.")
     @Size(min = 2, max = 32, message = "A last name must have between 2 and 32 characters.")
     @Pattern(regexp = "^[a-zA-Z\\d\s]*", message = "The last name includes invalid letters.")
+    @Column(name = "last_name")
     private String lastName;
 
     /**
@@ -0,0 +1,17 @@
+package de.philippbomers.management.students.student_manager.repository;
+
+import java.time.LocalDate;
+
+/**
+ * The IDs and the period of an allocation, without loading the associated entities
+ *
+ * @param id        of allocation
+ * @param studentId of allocated student
+ * @param projectId of project
+ * @param periodId  of allocation period
+ * @param begin     of allocation period
+ * @param end       of allocation period
+ */
+public record AllocationPeriod(Long id, Long studentId, Long projectId, Long periodId,
+                               LocalDate begin, LocalDate end) {
+}
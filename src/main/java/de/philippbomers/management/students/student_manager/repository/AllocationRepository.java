@@ -1,10 +1,26 @@
 package de.philippbomers.management.students.student_manager.repository;
 
 import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Period;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.entity.Student;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * Provides database requests. We only need to add requests that are not in the CrudRepository
@@ -12,6 +28,107 @@ import java.util.List;
 @Repository
 public interface AllocationRepository extends CrudRepository<Allocation, Long> {
 
+    /**
+     * Loads the student, employment, project and periods of each allocation in the same query,
+     * instead of one query per association
+     *
+     * @return List with all allocations
+     */
     // Needs to be included for ensuring receiving the correct type
+    @EntityGraph(attributePaths = {"student.employment", "project.period", "period"})
     List<Allocation> findAll();
+
+    /**
+     * @param id       of the last allocation of the previous page
+     * @param pageable size of the page
+     * @return the next allocations ordered by ID
+     */
+    @Query("select a from Allocation a join fetch a.student s join fetch s.employment "
+            + "join fetch a.project p join fetch p.period join fetch a.period "
+            + "where a.id > :id order by a.id")
+    List<Allocation> findPage(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * @param importHashes hashes of imported rows
+     * @return the hashes that belong to an allocation
+     */
+    @Query("select a.importHash from Allocation a where a.importHash in :importHashes")
+    Set<String> findImportHashes(@Param("importHashes") Collection<String> importHashes);
+
+    /**
+     * Reads all allocations with a database cursor, ordered by ID. Must be used inside a
+     * transaction and the stream must be closed.
+     *
+     * @return Stream with all allocations including their student, employment and project
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select a from Allocation a join fetch a.student s join fetch s.employment "
+            + "join fetch a.project p join fetch p.period join fetch a.period order by a.id")
+    Stream<Allocation> streamAll();
+
+    /**
+     * @return the periods of all allocations, without loading students and projects
+     */
+    @Query("select new de.philippbomers.management.students.student_manager.repository"
+            + ".AllocationPeriod(a.id, a.student.id, a.project.id, a.period.id, a.period.begin, "
+            + "a.period.end) from Allocation a")
+    List<AllocationPeriod> findAllPeriods();
+
+    /**
+     * Loads the student, employment, project and periods of each allocation in the same query
+     *
+     * @param ids of allocations
+     * @return List with the found allocations
+     */
+    @Override
+    @EntityGraph(attributePaths = {"student.employment", "project.period", "period"})
+    List<Allocation> findAllById(Iterable<Long> ids);
+
+    /**
+     * @param periodId ID of period
+     * @return true if an allocation uses the period
+     */
+    boolean existsByPeriodId(Long periodId);
+
+    /**
+     * Deletes all allocations of a student with a single statement
+     *
+     * @param studentId ID of student
+     * @return number of deleted allocations
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Allocation a where a.student.id = :studentId")
+    int deleteByStudentId(@Param("studentId") Long studentId);
+
+    /**
+     * Deletes all allocations of a project with a single statement
+     *
+     * @param projectId ID of project
+     * @return number of deleted allocations
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Allocation a where a.project.id = :projectId")
+    int deleteByProjectId(@Param("projectId") Long projectId);
+
+    /**
+     * Updates an allocation with a single statement, if nobody updated it since it was read. The
+     * allocation loses its import hash.
+     *
+     * @param id      of allocation
+     * @param version of allocation when it was read
+     * @param project new project, must be saved
+     * @param period  new period, must be saved
+     * @param student new student, must be saved
+     * @return 1 if the allocation was updated, 0 if it does not exist or has a newer version
+     */
+    @Modifying
+    @Transactional
+    @Query("update Allocation a set a.project = :project, a.period = :period, "
+            + "a.student = :student, a.importHash = null, a.version = a.version + 1 "
+            + "where a.id = :id and a.version = :version")
+    int updateIfCurrent(@Param("id") Long id, @Param("version") long version,
+                        @Param("project") Project project, @Param("period") Period period,
+                        @Param("student") Student student);
 }
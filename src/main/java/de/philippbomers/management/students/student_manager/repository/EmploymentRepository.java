@@ -1,10 +1,23 @@
 package de.philippbomers.management.students.student_manager.repository;
 
 import de.philippbomers.management.students.student_manager.entity.Employment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * Provides database requests. We only need to add requests that are not in the CrudRepository
@@ -14,4 +27,47 @@ public interface EmploymentRepository extends CrudRepository<Employment, Long> {
 
     // Needs to be included for ensuring receiving the correct type
     List<Employment> findAll();
+
+    /**
+     * The result is kept in the query cache, if the second-level cache is enabled
+     *
+     * @param name of employment, unique
+     * @return Optional<Employment>
+     */
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = "reference-queries")})
+    Optional<Employment> findByName(String name);
+
+    /**
+     * @param id       of the last employment of the previous page
+     * @param pageable size of the page
+     * @return the next employments ordered by ID
+     */
+    @Query("select e from Employment e where e.id > :id order by e.id")
+    List<Employment> findPage(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Reads all employments with a database cursor, ordered by ID. Must be used inside a
+     * transaction and the stream must be closed.
+     *
+     * @return Stream with all employments
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select e from Employment e order by e.id")
+    Stream<Employment> streamAll();
+
+    /**
+     * Updates an employment with a single statement, if nobody updated it since it was read
+     *
+     * @param id      of employment
+     * @param version of employment when it was read
+     * @param name    new name
+     * @return 1 if the employment was updated, 0 if it does not exist or has a newer version
+     */
+    @Modifying
+    @Transactional
+    @Query("update Employment e set e.name = :name, e.version = e.version + 1 "
+            + "where e.id = :id and e.version = :version")
+    int updateIfCurrent(@Param("id") Long id, @Param("version") long version,
+                        @Param("name") String name);
 }
@@ -0,0 +1,16 @@
+package de.philippbomers.management.students.student_manager.repository;
+
+import de.philippbomers.management.students.student_manager.entity.FileImport;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Provides database requests. We only need to add requests that are not in the CrudRepository
+ */
+@Repository
+public interface FileImportRepository extends CrudRepository<FileImport, Long> {
+
+    Optional<FileImport> findByHash(String hash);
+}
@@ -1,10 +1,21 @@
 package de.philippbomers.management.students.student_manager.repository;
 
 import de.philippbomers.management.students.student_manager.entity.Period;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * Provides database requests. We only need to add requests that are not in the CrudRepository
@@ -14,4 +25,38 @@ public interface PeriodRepository extends CrudRepository<Period, Long> {
 
     // Needs to be included for ensuring receiving the correct type
     List<Period> findAll();
+
+    /**
+     * @param id       of the last period of the previous page
+     * @param pageable size of the page
+     * @return the next periods ordered by ID
+     */
+    @Query("select p from Period p where p.id > :id order by p.id")
+    List<Period> findPage(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Reads all periods with a database cursor, ordered by ID. Must be used inside a
+     * transaction and the stream must be closed.
+     *
+     * @return Stream with all periods
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select p from Period p order by p.id")
+    Stream<Period> streamAll();
+
+    /**
+     * Updates a period with a single statement, if nobody updated it since it was read
+     *
+     * @param id      of period
+     * @param version of period when it was read
+     * @param begin   new begin
+     * @param end     new end
+     * @return 1 if the period was updated, 0 if it does not exist or has a newer version
+     */
+    @Modifying
+    @Transactional
+    @Query("update Period p set p.begin = :begin, p.end = :end, p.version = p.version + 1 "
+            + "where p.id = :id and p.version = :version")
+    int updateIfCurrent(@Param("id") Long id, @Param("version") long version,
+                        @Param("begin") LocalDate begin, @Param("end") LocalDate end);
 }
@@ -1,10 +1,25 @@
 package de.philippbomers.management.students.student_manager.repository;
 
+import de.philippbomers.management.students.student_manager.entity.Period;
 import de.philippbomers.management.students.student_manager.entity.Project;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * Provides database requests. We only need to add requests that are not in the CrudRepository
@@ -12,6 +27,74 @@ import java.util.List;
 @Repository
 public interface ProjectRepository extends CrudRepository<Project, Long> {
 
+    /**
+     * Loads the period of each project in the same query, instead of one query per association
+     *
+     * @return List with all projects
+     */
     // Needs to be included for ensuring receiving the correct type
+    @EntityGraph(attributePaths = {"period"})
     List<Project> findAll();
+
+    /**
+     * Loads the period of each project in the same query
+     *
+     * @param ids of projects
+     * @return List with the found projects
+     */
+    @Override
+    @EntityGraph(attributePaths = {"period"})
+    List<Project> findAllById(Iterable<Long> ids);
+
+    /**
+     * The result is kept in the query cache, if the second-level cache is enabled
+     *
+     * @param name of project, unique
+     * @return Optional<Project> including its period
+     */
+    @EntityGraph(attributePaths = {"period"})
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = "reference-queries")})
+    Optional<Project> findByName(String name);
+
+    /**
+     * @param id       of the last project of the previous page
+     * @param pageable size of the page
+     * @return the next projects ordered by ID
+     */
+    @Query("select p from Project p join fetch p.period "
+            + "where p.id > :id order by p.id")
+    List<Project> findPage(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Reads all projects with a database cursor, ordered by ID. Must be used inside a
+     * transaction and the stream must be closed.
+     *
+     * @return Stream with all projects
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select p from Project p join fetch p.period order by p.id")
+    Stream<Project> streamAll();
+
+    /**
+     * @param periodId ID of period
+     * @return true if a project uses the period
+     */
+    boolean existsByPeriodId(Long periodId);
+
+    /**
+     * Updates a project with a single statement, if nobody updated it since it was read
+     *
+     * @param id      of project
+     * @param version of project when it was read
+     * @param name    new name
+     * @param period  new period, must be saved
+     * @return 1 if the project was updated, 0 if it does not exist or has a newer version
+     */
+    @Modifying
+    @Transactional
+    @Query("update Project p set p.name = :name, p.period = :period, p.version = p.version + 1 "
+            + "where p.id = :id and p.version = :version")
+    int updateIfCurrent(@Param("id") Long id, @Param("version") long version,
+                        @Param("name") String name, @Param("period") Period period);
 }
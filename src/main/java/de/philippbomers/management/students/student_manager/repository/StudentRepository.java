@@ -1,10 +1,23 @@
 package de.philippbomers.management.students.student_manager.repository;
 
+import de.philippbomers.management.students.student_manager.entity.Employment;
 import de.philippbomers.management.students.student_manager.entity.Student;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * Provides database requests. We only need to add requests that are not in the CrudRepository
@@ -12,6 +25,82 @@ import java.util.List;
 @Repository
 public interface StudentRepository extends CrudRepository<Student, Long> {
 
+    /**
+     * Loads the employment of each student in the same query, instead of one query per association
+     *
+     * @return List with all students
+     */
     // Needs to be included for ensuring receiving the correct type
+    @EntityGraph(attributePaths = {"employment"})
     List<Student> findAll();
+
+    /**
+     * Loads the employment of each student in the same query
+     *
+     * @param ids of students
+     * @return List with the found students
+     */
+    @Override
+    @EntityGraph(attributePaths = {"employment"})
+    List<Student> findAllById(Iterable<Long> ids);
+
+    /**
+     * @param firstName    of student
+     * @param lastName     of student
+     * @param employmentId ID of employment
+     * @return Optional<Student> with the unique combination of names and employment
+     */
+    Optional<Student> findByFirstNameAndLastNameAndEmploymentId(String firstName, String lastName,
+                                                                Long employmentId);
+
+    /**
+     * @param employmentId ID of employment
+     * @return List with the students of the employment
+     */
+    @EntityGraph(attributePaths = {"employment"})
+    List<Student> findByEmploymentId(Long employmentId);
+
+    /**
+     * @param id       of the last student of the previous page
+     * @param pageable size of the page
+     * @return the next students ordered by ID
+     */
+    @Query("select s from Student s join fetch s.employment "
+            + "where s.id > :id order by s.id")
+    List<Student> findPage(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Reads all students with a database cursor, ordered by ID. Must be used inside a
+     * transaction and the stream must be closed.
+     *
+     * @return Stream with all students
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select s from Student s join fetch s.employment order by s.id")
+    Stream<Student> streamAll();
+
+    /**
+     * @param employmentId ID of employment
+     * @return true if a student has the employment
+     */
+    boolean existsByEmploymentId(Long employmentId);
+
+    /**
+     * Updates a student with a single statement, if nobody updated it since it was read
+     *
+     * @param id         of student
+     * @param version    of student when it was read
+     * @param firstName  new first name
+     * @param lastName   new last name
+     * @param employment new employment, must be saved
+     * @return 1 if the student was updated, 0 if it does not exist or has a newer version
+     */
+    @Modifying
+    @Transactional
+    @Query("update Student s set s.firstName = :firstName, s.lastName = :lastName, "
+            + "s.employment = :employment, s.version = s.version + 1 "
+            + "where s.id = :id and s.version = :version")
+    int updateIfCurrent(@Param("id") Long id, @Param("version") long version,
+                        @Param("firstName") String firstName, @Param("lastName") String lastName,
+                        @Param("employment") Employment employment);
 }
@@ -0,0 +1,13 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+
+/**
+ * Result for one allocation of a batch
+ *
+ * @param index      position of the allocation in the batch, beginning by 0
+ * @param allocation the saved allocation or null if it was not saved
+ * @param issue      why the allocation was not saved or null if it was saved
+ */
+public record AllocationBatchResult(int index, Allocation allocation, String issue) {
+}
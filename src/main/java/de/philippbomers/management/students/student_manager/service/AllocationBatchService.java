@@ -0,0 +1,313 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Period;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
+import de.philippbomers.management.students.student_manager.repository.EmploymentRepository;
+import de.philippbomers.management.students.student_manager.repository.StudentRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Saves many allocations at once
+ * <p>
+ * The whole batch is checked in one pass with the same rules as a single allocation. Referenced
+ * students are loaded with one query, projects and employments are read from their caches. New
+ * students, employments and shared periods are saved only once, even if several allocations use
+ * them. All valid allocations are saved in one transaction, so the inserts are sent in JDBC
+ * batches.
+ * Invalid allocations are reported and skipped, they do not stop the others.
+ */
+@Service
+public class AllocationBatchService {
+
+    // We use constructor based injection because field based injection is not immutable
+
+    private final AllocationRepository allocationRepository;
+
+    private final PeriodService periodService;
+
+    private final ProjectService projectService;
+
+    private final StudentRepository studentRepository;
+
+    private final EmploymentRepository employmentRepository;
+
+    private final EmploymentService employmentService;
+
+    private final AllocationIndex allocationIndex;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Validator validator;
+
+    private final EntityVersions entityVersions;
+
+    public AllocationBatchService(AllocationRepository allocationRepository, PeriodService periodService, ProjectService projectService, StudentRepository studentRepository, EmploymentRepository employmentRepository, EmploymentService employmentService, AllocationIndex allocationIndex, TransactionTemplate transactionTemplate, Validator validator, EntityVersions entityVersions) {
+        this.allocationRepository = allocationRepository;
+        this.periodService = periodService;
+        this.projectService = projectService;
+        this.studentRepository = studentRepository;
+        this.employmentRepository = employmentRepository;
+        this.employmentService = employmentService;
+        this.allocationIndex = allocationIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.entityVersions = entityVersions;
+    }
+
+    /**
+     * Adds new allocations. IDs of the allocations are ignored, students and periods without ID
+     * are created.
+     *
+     * @param allocations to add
+     * @return List with one result per allocation, in the same order
+     */
+    public List<AllocationBatchResult> addAllocations(final List<Allocation> allocations) {
+        final String[] issues = new String[allocations.size()];
+        List<Allocation> saved;
+        try {
+            saved = this.transactionTemplate.execute(status -> this.save(allocations, issues));
+        } catch (final RuntimeException e) {
+
+            // The transaction was rolled back, so none of the allocations was saved
+            saved = null;
+            for (int i = 0; i < issues.length; i++) {
+                if (issues[i] == null) {
+                    issues[i] = "Could not save the allocations: " + e.getMessage();
+                }
+            }
+        }
+
+        final List<AllocationBatchResult> results = new ArrayList<>(issues.length);
+        for (int i = 0; i < issues.length; i++) {
+            results.add(new AllocationBatchResult(i,
+                    issues[i] == null ? Objects.requireNonNull(saved).get(i) : null, issues[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Checks and saves the allocations in the current transaction
+     *
+     * @param allocations to add
+     * @param issues      receives the issue of each invalid allocation
+     * @return List with the saved allocations, null for invalid allocations
+     */
+    private List<Allocation> save(final List<Allocation> allocations, final String[] issues) {
+        final Batch batch = new Batch(
+                byId(cached(referencedIds(allocations,
+                        allocation -> allocation.getProject() == null ? null
+                                : allocation.getProject().getId()),
+                        this.projectService::getProject), Project::getId),
+                byId(this.studentRepository.findAllById(referencedIds(allocations,
+                        allocation -> allocation.getStudent() == null ? null
+                                : allocation.getStudent().getId())), Student::getId),
+                byId(cached(referencedIds(allocations,
+                        allocation -> allocation.getStudent() == null
+                                || allocation.getStudent().getEmployment() == null ? null
+                                : allocation.getStudent().getEmployment().getId()),
+                        this.employmentService::getEmployment), Employment::getId));
+
+        final List<Allocation> checked = new ArrayList<>(allocations.size());
+        for (int i = 0; i < allocations.size(); i++) {
+            try {
+                checked.add(this.check(allocations.get(i), batch));
+            } catch (final IllegalArgumentException e) {
+                issues[i] = e.getMessage();
+                checked.add(null);
+            }
+        }
+
+        // Each new or edited entity is saved once, the inserts are flushed together
+        final Map<Employment, Employment> employments = new IdentityHashMap<>();
+        final Map<Student, Student> students = new IdentityHashMap<>();
+        final Map<Period, Period> periods = new IdentityHashMap<>();
+        final List<Allocation> results = new ArrayList<>(checked.size());
+        for (final Allocation allocation : checked) {
+            if (allocation == null) {
+                results.add(null);
+                continue;
+            }
+            allocation.setStudent(students.computeIfAbsent(allocation.getStudent(), student -> {
+                if (student.getId() != null) {
+                    return student;
+                }
+                student.setEmployment(employments.computeIfAbsent(student.getEmployment(),
+                        employment -> employment.getId() != null ? employment
+                                : counted(this.employmentRepository.save(employment),
+                                Employment::getId, this.entityVersions.employments)));
+                return counted(this.studentRepository.save(student), Student::getId,
+                        this.entityVersions.students);
+            }));
+
+            // Saved periods can be edited, so their other allocations are updated in the index
+            allocation.setPeriod(periods.computeIfAbsent(allocation.getPeriod(),
+                    this.periodService::setPeriod));
+
+            final Allocation result = this.allocationRepository.save(allocation);
+            this.allocationIndex.update(result);
+            this.entityVersions.allocations.increment(result.getId());
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Checks an allocation and replaces its references by the loaded or shared entities
+     *
+     * @param allocation to check
+     * @param batch      entities of the batch
+     * @return the allocation ready to be saved
+     * @throws IllegalArgumentException with the issue if the allocation is invalid
+     */
+    private Allocation check(final Allocation allocation, final Batch batch) {
+        if (allocation == null) {
+            throw new IllegalArgumentException("Please add an allocation.");
+        }
+        this.validate(allocation);
+        final Project project = find(batch.projects(), allocation.getProject().getId(),
+                "The project does not exist.");
+
+        // Ensures that student (allocation) period is inside projects period
+        final Period period = this.validate(allocation.getPeriod());
+        if (period.getBegin().isBefore(project.getPeriod().getBegin())) {
+            period.setBegin(project.getPeriod().getBegin());
+        }
+        if (period.getEnd().isAfter(project.getPeriod().getEnd())) {
+            period.setEnd(project.getPeriod().getEnd());
+        }
+        if (!period.getBegin().isBefore(period.getEnd())) {
+            throw new IllegalArgumentException("The allocation must end after it begins and "
+                    + "overlap the project.");
+        }
+
+        // Allocations can share a saved period, but only with the same times
+        final Period sharedPeriod = period.getId() == null ? period
+                : batch.periods().getOrDefault(period.getId(), period);
+        if (!sharedPeriod.getBegin().equals(period.getBegin())
+                || !sharedPeriod.getEnd().equals(period.getEnd())) {
+            throw new IllegalArgumentException("The period is used with different times.");
+        }
+
+        final Student student = this.findStudent(allocation.getStudent(), batch);
+        if (period.getId() != null) {
+            batch.periods().putIfAbsent(period.getId(), period);
+        }
+
+        allocation.setId(null);
+        allocation.setImportHash(null);
+        allocation.setProject(project);
+        allocation.setPeriod(sharedPeriod);
+        allocation.setStudent(student);
+        return allocation;
+    }
+
+    /**
+     * Finds a saved student by ID or prepares a new student once for all allocations of the batch
+     */
+    private Student findStudent(final Student student, final Batch batch) {
+        if (student.getId() != null) {
+            return find(batch.students(), student.getId(), "The student does not exist.");
+        }
+        this.validate(student);
+        final Employment employment = this.validate(student.getEmployment());
+
+        final Employment sharedEmployment = employment.getId() != null
+                ? find(batch.employments(), employment.getId(), "The employment does not exist.")
+                : batch.newEmployments().computeIfAbsent(employment.getName(),
+                name -> this.employmentService.getEmployment(name).orElse(employment));
+        student.setEmployment(sharedEmployment);
+
+        // Students are identified by their names and their employment, like in the import
+        return batch.newStudents().computeIfAbsent(new StudentKey(student.getFirstName(),
+                        student.getLastName(), sharedEmployment.getName()),
+                key -> sharedEmployment.getId() == null ? student : this.studentRepository
+                        .findByFirstNameAndLastNameAndEmploymentId(key.firstName(),
+                                key.lastName(), sharedEmployment.getId())
+                        .orElse(student));
+    }
+
+    private <T> T validate(final T entity) {
+        final Set<ConstraintViolation<T>> violations = this.validator.validate(entity);
+        if (!violations.isEmpty()) {
+
+            // Sorts the messages, so the result does not depend on the order of the set
+            throw new IllegalArgumentException(violations.stream()
+                    .map(ConstraintViolation::getMessage).sorted()
+                    .collect(Collectors.joining(" ")));
+        }
+        return entity;
+    }
+
+    private static <T> T find(final Map<Long, T> entities, final Long id, final String issue) {
+        final T entity = entities.get(id);
+        if (entity == null) {
+            throw new IllegalArgumentException(issue);
+        }
+        return entity;
+    }
+
+    /**
+     * Counts the write of a saved entity, so the tags of its table change
+     */
+    private static <T> T counted(final T entity, final Function<T, Long> id,
+                                 final VersionCounter counter) {
+        counter.increment(id.apply(entity));
+        return entity;
+    }
+
+    private static Set<Long> referencedIds(final List<Allocation> allocations,
+                                           final Function<Allocation, Long> reference) {
+        return allocations.stream().filter(Objects::nonNull).map(reference)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    /**
+     * Reads projects and employments from their caches, they are rarely written
+     */
+    private static <T> List<T> cached(final Set<Long> ids,
+                                      final Function<Long, Optional<T>> finder) {
+        return ids.stream().map(finder).flatMap(Optional::stream).toList();
+    }
+
+    private static <T> Map<Long, T> byId(final Iterable<T> entities, final Function<T, Long> id) {
+        final Map<Long, T> index = new HashMap<>();
+        entities.forEach(entity -> index.put(id.apply(entity), entity));
+        return index;
+    }
+
+    /**
+     * Entities that are loaded or created once for the whole batch
+     */
+    private record Batch(Map<Long, Project> projects, Map<Long, Student> students,
+                         Map<Long, Employment> employments, Map<Long, Period> periods,
+                         Map<String, Employment> newEmployments,
+                         Map<StudentKey, Student> newStudents) {
+
+        Batch(final Map<Long, Project> projects, final Map<Long, Student> students,
+              final Map<Long, Employment> employments) {
+            this(projects, students, employments, new HashMap<>(), new HashMap<>(),
+                    new HashMap<>());
+        }
+    }
+
+    private record StudentKey(String firstName, String lastName, String employmentName) {
+    }
+}
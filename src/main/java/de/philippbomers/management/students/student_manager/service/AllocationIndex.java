@@ -0,0 +1,340 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.repository.AllocationPeriod;
+import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the allocation periods per student and per project
+ * <p>
+ * Each student and each project has an interval tree of its allocation periods, so overlapping
+ * allocations are found without scanning the allocation table. The occupancy index knows the
+ * allocated students of each day, so free students are found without looking at allocations. The
+ * timelines count the allocations of each day, so a utilization report does not depend on the
+ * number of allocations either. The index is loaded from the
+ * database when it is used for the first time. Changes are applied after their transaction is
+ * committed, so rolled back changes never reach the index.
+ */
+@Component
+class AllocationIndex {
+
+    // We use constructor based injection because field based injection is not immutable
+
+    private final AllocationRepository allocationRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, AllocationPeriod> allocations = new HashMap<>();
+
+    private final Map<Long, IntervalTree> studentTrees = new HashMap<>();
+
+    private final Map<Long, IntervalTree> projectTrees = new HashMap<>();
+
+    // Number of allocations on each day
+    private final Map<Long, Timeline> studentTimelines = new HashMap<>();
+
+    private final Map<Long, Timeline> projectTimelines = new HashMap<>();
+
+    // Students that are allocated on each day
+    private final OccupancyIndex occupancy = new OccupancyIndex();
+
+    // Allocations that use a period, needed when the period is edited
+    private final Map<Long, Set<Long>> periodAllocations = new HashMap<>();
+
+    private boolean loaded;
+
+    AllocationIndex(final AllocationRepository allocationRepository) {
+        this.allocationRepository = allocationRepository;
+    }
+
+    /**
+     * @param studentId ID of student
+     * @param from      first day of the searched period
+     * @param to        last day of the searched period
+     * @return IDs of the allocations of the student that overlap the period, ordered by begin
+     */
+    List<Long> findStudentOverlaps(final Long studentId, final LocalDate from, final LocalDate to) {
+        return this.findOverlaps(this.studentTrees, studentId, from, to);
+    }
+
+    /**
+     * @param projectId ID of project
+     * @param from      first day of the searched period
+     * @param to        last day of the searched period
+     * @return IDs of the allocations of the project that overlap the period, ordered by begin
+     */
+    List<Long> findProjectOverlaps(final Long projectId, final LocalDate from, final LocalDate to) {
+        return this.findOverlaps(this.projectTrees, projectId, from, to);
+    }
+
+    /**
+     * @param from first day of the searched period
+     * @param to   last day of the searched period
+     * @return IDs of the students that are allocated on at least one day of the period
+     */
+    Set<Long> findOccupiedStudents(final LocalDate from, final LocalDate to) {
+        this.load();
+        this.lock.readLock().lock();
+        try {
+            return this.occupancy.findOccupied(from.toEpochDay(), to.toEpochDay());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param studentId ID of student
+     * @param from      first day of the report
+     * @param to        last day of the report
+     * @param bucket    length of the periods of the report
+     * @return List with the utilization of the student in each period
+     */
+    List<Utilization> getStudentUtilization(final Long studentId, final LocalDate from,
+                                            final LocalDate to, final UtilizationBucket bucket) {
+        return this.getUtilization(this.studentTimelines, studentId, from, to, bucket);
+    }
+
+    /**
+     * @param projectId ID of project
+     * @param from      first day of the report
+     * @param to        last day of the report
+     * @param bucket    length of the periods of the report
+     * @return List with the utilization of the project in each period
+     */
+    List<Utilization> getProjectUtilization(final Long projectId, final LocalDate from,
+                                            final LocalDate to, final UtilizationBucket bucket) {
+        return this.getUtilization(this.projectTimelines, projectId, from, to, bucket);
+    }
+
+    /**
+     * Adds or updates a saved allocation, when its transaction is committed
+     *
+     * @param allocation saved allocation
+     */
+    void update(final Allocation allocation) {
+        final AllocationPeriod period = new AllocationPeriod(allocation.getId(),
+                allocation.getStudent().getId(), allocation.getProject().getId(),
+                allocation.getPeriod().getId(), allocation.getPeriod().getBegin(),
+                allocation.getPeriod().getEnd());
+        afterCommit(() -> this.write(() -> {
+
+            // Until the index is loaded, the allocation is read from the database with all others
+            if (this.loaded) {
+                this.put(period);
+            }
+        }));
+    }
+
+    /**
+     * Updates the allocations that use an edited period, when its transaction is committed
+     *
+     * @param periodId ID of period
+     * @param begin    of period
+     * @param end      of period
+     */
+    void updatePeriod(final Long periodId, final LocalDate begin, final LocalDate end) {
+        afterCommit(() -> this.write(() -> {
+            for (final Long id : List.copyOf(this.periodAllocations.getOrDefault(periodId, Set.of()))) {
+                final AllocationPeriod allocation = this.allocations.get(id);
+                this.put(new AllocationPeriod(id, allocation.studentId(), allocation.projectId(),
+                        periodId, begin, end));
+            }
+        }));
+    }
+
+    /**
+     * Removes a deleted allocation, when its transaction is committed
+     *
+     * @param id of allocation
+     */
+    void remove(final Long id) {
+        afterCommit(() -> this.write(() -> this.delete(id)));
+    }
+
+    /**
+     * Removes all allocations of a deleted student, when its transaction is committed
+     *
+     * @param studentId ID of student
+     */
+    void removeStudent(final Long studentId) {
+        afterCommit(() -> this.write(() -> this.deleteAll(this.studentTrees.get(studentId))));
+    }
+
+    /**
+     * Removes all allocations of a deleted project, when its transaction is committed
+     *
+     * @param projectId ID of project
+     */
+    void removeProject(final Long projectId) {
+        afterCommit(() -> this.write(() -> this.deleteAll(this.projectTrees.get(projectId))));
+    }
+
+    private List<Long> findOverlaps(final Map<Long, IntervalTree> trees, final Long id,
+                                    final LocalDate from, final LocalDate to) {
+        this.load();
+        final List<Long> overlaps = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            final IntervalTree tree = trees.get(id);
+            if (tree != null) {
+                tree.findOverlaps(from.toEpochDay(), to.toEpochDay(), overlaps::add);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return overlaps;
+    }
+
+    private List<Utilization> getUtilization(final Map<Long, Timeline> timelines, final Long id,
+                                             final LocalDate from, final LocalDate to,
+                                             final UtilizationBucket bucket) {
+        this.load();
+        final List<Utilization> utilization = new ArrayList<>();
+        this.lock.readLock().lock();
+        try {
+            final Timeline timeline = timelines.get(id);
+            for (LocalDate begin = from; !begin.isAfter(to); ) {
+                final LocalDate end = bucket.getEnd(begin).isAfter(to) ? to : bucket.getEnd(begin);
+                final long days = end.toEpochDay() - begin.toEpochDay() + 1;
+                final long allocationDays = timeline == null ? 0
+                        : timeline.sum(begin.toEpochDay(), end.toEpochDay());
+                utilization.add(new Utilization(begin, end, allocationDays,
+                        (double) allocationDays / days));
+                begin = end.plusDays(1);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return utilization;
+    }
+
+    private void load() {
+        this.lock.readLock().lock();
+        try {
+            if (this.loaded) {
+                return;
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        this.write(() -> {
+            if (!this.loaded) {
+                this.allocationRepository.findAllPeriods().forEach(this::put);
+                this.loaded = true;
+            }
+        });
+    }
+
+    private void write(final Runnable action) {
+        this.lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void put(final AllocationPeriod allocation) {
+        this.delete(allocation.id());
+        this.allocations.put(allocation.id(), allocation);
+        this.periodAllocations.computeIfAbsent(allocation.periodId(), key -> new HashSet<>())
+                .add(allocation.id());
+        final long begin = allocation.begin().toEpochDay();
+        final long end = allocation.end().toEpochDay();
+        this.studentTrees.computeIfAbsent(allocation.studentId(), key -> new IntervalTree())
+                .add(allocation.id(), begin, end);
+        this.projectTrees.computeIfAbsent(allocation.projectId(), key -> new IntervalTree())
+                .add(allocation.id(), begin, end);
+        this.occupancy.occupy(allocation.studentId(), begin, end);
+        this.studentTimelines.computeIfAbsent(allocation.studentId(), key -> new Timeline())
+                .add(begin, end);
+        this.projectTimelines.computeIfAbsent(allocation.projectId(), key -> new Timeline())
+                .add(begin, end);
+    }
+
+    private void delete(final Long id) {
+        final AllocationPeriod allocation = this.allocations.remove(id);
+        if (allocation == null) {
+            return;
+        }
+        final Set<Long> periodAllocations = this.periodAllocations.get(allocation.periodId());
+        periodAllocations.remove(id);
+        if (periodAllocations.isEmpty()) {
+            this.periodAllocations.remove(allocation.periodId());
+        }
+        final long begin = allocation.begin().toEpochDay();
+        final long end = allocation.end().toEpochDay();
+        removeFromTree(this.studentTrees, allocation.studentId(), id, begin);
+        removeFromTree(this.projectTrees, allocation.projectId(), id, begin);
+        removeFromTimeline(this.studentTimelines, allocation.studentId(), begin, end);
+        removeFromTimeline(this.projectTimelines, allocation.projectId(), begin, end);
+
+        // The student can still be allocated on some of the days by other allocations
+        this.occupancy.release(allocation.studentId(), begin, end);
+        final IntervalTree tree = this.studentTrees.get(allocation.studentId());
+        if (tree != null) {
+            tree.findOverlaps(begin, end, other -> {
+                final AllocationPeriod period = this.allocations.get(other);
+                this.occupancy.occupy(allocation.studentId(),
+                        Math.max(begin, period.begin().toEpochDay()),
+                        Math.min(end, period.end().toEpochDay()));
+            });
+        }
+    }
+
+    private void deleteAll(final IntervalTree tree) {
+        if (tree != null) {
+            final List<Long> ids = new ArrayList<>(tree.size());
+            tree.findOverlaps(Long.MIN_VALUE, Long.MAX_VALUE, ids::add);
+            ids.forEach(this::delete);
+        }
+    }
+
+    private static void removeFromTree(final Map<Long, IntervalTree> trees, final Long key,
+                                       final long id, final long begin) {
+        final IntervalTree tree = trees.get(key);
+        tree.remove(id, begin);
+        if (tree.isEmpty()) {
+            trees.remove(key);
+        }
+    }
+
+    private static void removeFromTimeline(final Map<Long, Timeline> timelines, final Long key,
+                                           final long begin, final long end) {
+        final Timeline timeline = timelines.get(key);
+        timeline.remove(begin, end);
+        if (timeline.isEmpty()) {
+            timelines.remove(key);
+        }
+    }
+
+    /**
+     * Runs the action after the current transaction is committed, or at once if there is no
+     * transaction
+     */
+    private static void afterCommit(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
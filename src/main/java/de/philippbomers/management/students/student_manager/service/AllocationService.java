@@ -1,12 +1,21 @@
 package de.philippbomers.management.students.student_manager.service;
 
 import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Period;
+import de.philippbomers.management.students.student_manager.entity.Project;
 import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
-import de.philippbomers.management.students.student_manager.repository.PeriodRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * The service class provides a connection between the Controller and Repository and can include
@@ -23,13 +32,22 @@ public class AllocationService {
 
     private final StudentService studentService;
 
-    private final PeriodRepository periodRepository;
+    private final ProjectService projectService;
 
-    public AllocationService(AllocationRepository allocationRepository, PeriodService periodService, StudentService studentService, PeriodRepository periodRepository) {
+    private final AllocationIndex allocationIndex;
+
+    private final EntityVersions entityVersions;
+
+    // Many clients read all allocations at the same time, for example when a meeting starts
+    private final SingleFlight<List<Allocation>> allAllocations = new SingleFlight<>();
+
+    public AllocationService(AllocationRepository allocationRepository, PeriodService periodService, StudentService studentService, ProjectService projectService, AllocationIndex allocationIndex, EntityVersions entityVersions) {
         this.allocationRepository = allocationRepository;
         this.periodService = periodService;
         this.studentService = studentService;
-        this.periodRepository = periodRepository;
+        this.projectService = projectService;
+        this.allocationIndex = allocationIndex;
+        this.entityVersions = entityVersions;
     }
 
     /**
@@ -39,6 +57,89 @@ public class AllocationService {
         return this.allocationRepository.findAll();
     }
 
+    /**
+     * Reads all allocations with one query for all concurrent callers. The allocations are
+     * fetched with their associations and shared by the callers, so they must not be changed and
+     * must not be used inside a transaction.
+     *
+     * @return List with all allocations
+     */
+    public List<Allocation> getSharedAllocations() {
+
+        // Callers that saw a write do not get a result that was read before it
+        return this.allAllocations.get(this.entityVersions.allocations(),
+                this.allocationRepository::findAll);
+    }
+
+    /**
+     * @return how many reads of all allocations were collapsed into a running one
+     */
+    public CoalescingStatistics getCoalescingStatistics() {
+        return this.allAllocations.getStatistics();
+    }
+
+    /**
+     * @param after ID of the last allocation of the previous page, 0 for the first page
+     * @param limit maximum number of allocations
+     * @return List with the next allocations ordered by ID
+     */
+    public List<Allocation> getAllocations(final long after, final int limit) {
+        return this.allocationRepository.findPage(after, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Reads all allocations with a database cursor. Must be used inside a transaction and the stream
+     * must be closed.
+     *
+     * @return Stream with all allocations ordered by ID
+     */
+    public Stream<Allocation> streamAllAllocations() {
+        return this.allocationRepository.streamAll();
+    }
+
+    /**
+     * @return entity tag of all allocations, which changes with each write of them or of the
+     * entities they include
+     */
+    public String getAllocationsTag() {
+        return this.entityVersions.allocations();
+    }
+
+    /**
+     * @param id of allocation
+     * @return entity tag of the allocation, which changes with each write of it or of the
+     * entities it includes
+     */
+    public String getAllocationTag(final Long id) {
+        return this.entityVersions.allocation(id);
+    }
+
+    /**
+     * Finds the allocations of a student that overlap a period, without scanning all allocations
+     *
+     * @param studentId ID of student
+     * @param from      first day of the period
+     * @param to        last day of the period
+     * @return List with the overlapping allocations ordered by begin
+     */
+    public List<Allocation> getStudentOverlaps(final Long studentId, final LocalDate from,
+                                               final LocalDate to) {
+        return this.loadInOrder(this.allocationIndex.findStudentOverlaps(studentId, from, to));
+    }
+
+    /**
+     * Finds the allocations of a project that overlap a period, without scanning all allocations
+     *
+     * @param projectId ID of project
+     * @param from      first day of the period
+     * @param to        last day of the period
+     * @return List with the overlapping allocations ordered by begin
+     */
+    public List<Allocation> getProjectOverlaps(final Long projectId, final LocalDate from,
+                                               final LocalDate to) {
+        return this.loadInOrder(this.allocationIndex.findProjectOverlaps(projectId, from, to));
+    }
+
     /**
      * @param id of allocation
      * @return Optional<Allocation>
@@ -52,6 +153,57 @@ public class AllocationService {
      * @return the saved allocation
      */
     public Allocation setAllocation(final Allocation allocation) {
+        if (!this.prepare(allocation)) {
+            return null;
+        }
+        final Allocation saved = this.allocationRepository.save(allocation);
+        this.allocationIndex.update(saved);
+        this.entityVersions.allocations.increment(saved.getId());
+        return saved;
+    }
+
+    /**
+     * Edits a saved allocation with a single conditional update. New or edited periods and
+     * students are saved first, like for a new allocation, and are rolled back if the edit fails.
+     * The edited allocation is returned with its saved project, period and student.
+     *
+     * @param allocation edited allocation with the version it was read with
+     * @return Optional with the edited allocation, empty if the periods do not fit, or if the
+     * allocation does not exist or was edited since
+     */
+    @Transactional
+    public Optional<Allocation> editAllocation(final Allocation allocation) {
+        if (!this.prepare(allocation) || this.allocationRepository.updateIfCurrent(
+                allocation.getId(), allocation.getVersion(), allocation.getProject(),
+                allocation.getPeriod(), allocation.getStudent()) == 0) {
+
+            // Also rolls back the entities that were saved for the edit
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return Optional.empty();
+        }
+        allocation.setVersion(allocation.getVersion() + 1);
+        allocation.setImportHash(null);
+        this.allocationIndex.update(allocation);
+        this.entityVersions.allocations.increment(allocation.getId());
+        return Optional.of(allocation);
+    }
+
+    /**
+     * Fits the period of an allocation into the period of its project and saves the period and
+     * the student
+     *
+     * @param allocation new or edited allocation
+     * @return false if the allocation cannot be saved
+     */
+    private boolean prepare(final Allocation allocation) {
+
+        // The saved project is read from the cache, so an allocation cannot change its period
+        final Optional<Project> project = allocation.getProject().getId() == null ? Optional.empty()
+                : this.projectService.getProject(allocation.getProject().getId());
+        if (project.isEmpty()) {
+            return false;
+        }
+        allocation.setProject(project.get());
 
         // Ensures that student (allocation) period is inside projects period
         if (allocation.getPeriod().getBegin()
@@ -65,26 +217,46 @@ public class AllocationService {
 
         // The allocations must have different times
         if (allocation.getPeriod().getBegin().equals(allocation.getPeriod().getEnd())) {
-            return null;
+            return false;
+        }
+
+        // Invalid periods are not saved
+        final Period period = this.periodService.setPeriod(allocation.getPeriod());
+        if (period == null) {
+            return false;
         }
 
-        allocation.setPeriod(this.periodService.setPeriod(allocation.getPeriod()));
+        allocation.setPeriod(period);
         allocation.setStudent(this.studentService.setStudent(allocation.getStudent()));
-        return this.allocationRepository.save(allocation);
+        return true;
     }
 
     /**
-     * Deletes an allocation by ID and returns the deleted allocation
+     * Deletes an allocation by ID and returns the deleted allocation. Its period is deleted as
+     * well, unless another project or allocation still uses it.
      *
      * @param id id of allocation to delete
      * @return the deleted allocation
      */
+    @Transactional
     public Optional<Allocation> deleteAllocation(final Long id) {
         final Optional<Allocation> allocation = this.allocationRepository.findById(id);
         allocation.ifPresent(value -> {
             this.allocationRepository.deleteById(id);
-            this.periodRepository.delete(value.getPeriod());
+            this.entityVersions.allocations.increment(id);
+            this.periodService.deletePeriod(value.getPeriod().getId());
+            this.allocationIndex.remove(id);
         });
         return allocation;
     }
+
+    private List<Allocation> loadInOrder(final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        final Map<Long, Allocation> allocations = new HashMap<>();
+        this.allocationRepository.findAllById(ids)
+                .forEach(allocation -> allocations.put(allocation.getId(), allocation));
+        return ids.stream().map(allocations::get).filter(Objects::nonNull).toList();
+    }
 }
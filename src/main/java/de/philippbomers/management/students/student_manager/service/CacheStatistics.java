@@ -0,0 +1,12 @@
+package de.philippbomers.management.students.student_manager.service;
+
+/**
+ * Statistics of a cache since the application was started
+ *
+ * @param size      number of cached entities
+ * @param hits      lookups that were answered from the cache
+ * @param misses    lookups that were sent to the database
+ * @param evictions entities that were evicted because of the size or the age
+ */
+public record CacheStatistics(long size, long hits, long misses, long evictions) {
+}
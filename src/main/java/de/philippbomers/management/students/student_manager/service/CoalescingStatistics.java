@@ -0,0 +1,11 @@
+package de.philippbomers.management.students.student_manager.service;
+
+/**
+ * Statistics of collapsed reads since the application was started
+ *
+ * @param requests  reads that were requested
+ * @param queries   reads that were sent to the database
+ * @param coalesced reads that got the result of a read that was already running
+ */
+public record CoalescingStatistics(long requests, long queries, long coalesced) {
+}
@@ -0,0 +1,138 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a CSV or TSV stream into rows and fields
+ * <p>
+ * The stream is read through a fixed buffer and the fields are collected in one reused
+ * StringBuilder, so only the field values themselves are allocated. Fields can be quoted with
+ * double quotes. Quoted fields can contain the delimiter, line breaks and escaped quotes ("").
+ * Rows end with \n, \r\n or \r.
+ */
+class CsvTokenizer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char QUOTE = '"';
+
+    private final Reader reader;
+
+    private final char delimiter;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    // Fields of the current row, reused for each row
+    private final List<String> fields = new ArrayList<>();
+
+    // Content of the current field
+    private final StringBuilder field = new StringBuilder();
+
+    private int position;
+    private int limit;
+    private int rowIndex = -1;
+
+    CsvTokenizer(final Reader reader, final char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Reads the next row
+     *
+     * @return fields of the row or null at the end of the stream. The list is reused, so it is
+     * only valid until the next call.
+     * @throws IOException if the stream could not be read or a quoted field is not closed
+     */
+    List<String> nextRow() throws IOException {
+        this.fields.clear();
+        this.field.setLength(0);
+
+        int c = this.read();
+        if (c < 0) {
+            return null;
+        }
+        this.rowIndex++;
+
+        // Skips the byte order mark of the first row
+        if (this.rowIndex == 0 && c == '\uFEFF') {
+            c = this.read();
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Row " + this.rowIndex + ": quoted field is not closed");
+                }
+                if (c == QUOTE) {
+
+                    // Two quotes inside a quoted field are one quote
+                    c = this.read();
+                    if (c == QUOTE) {
+                        this.field.append(QUOTE);
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    this.field.append((char) c);
+                }
+            } else if (c < 0 || c == '\n' || c == '\r') {
+                this.endField();
+
+                // \r\n ends the row once
+                if (c == '\r' && this.peek() == '\n') {
+                    this.position++;
+                }
+                return this.fields;
+            } else if (c == this.delimiter) {
+                this.endField();
+            } else if (c == QUOTE && this.field.isEmpty()) {
+                quoted = true;
+            } else {
+                this.field.append((char) c);
+            }
+            c = this.read();
+        }
+    }
+
+    /**
+     * @return number of the last row returned by nextRow(), beginning by 0
+     */
+    int getRowIndex() {
+        return this.rowIndex;
+    }
+
+    private void endField() {
+        this.fields.add(this.field.toString());
+        this.field.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++];
+    }
+
+    private int peek() throws IOException {
+        if (this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.position];
+    }
+
+    private boolean fill() throws IOException {
+        final int read = this.reader.read(this.buffer, 0, this.buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        this.position = 0;
+        this.limit = read;
+        return true;
+    }
+}
@@ -1,12 +1,19 @@
 package de.philippbomers.management.students.student_manager.service;
 
+import de.philippbomers.management.students.student_manager.config.ReferenceCacheProperties;
 import de.philippbomers.management.students.student_manager.entity.Employment;
 import de.philippbomers.management.students.student_manager.repository.EmploymentRepository;
 import de.philippbomers.management.students.student_manager.repository.StudentRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * The service class provides a connection between the Controller and Repository and can include
@@ -21,9 +28,23 @@ public class EmploymentService {
 
     private final StudentRepository studentRepository;
 
-    public EmploymentService(EmploymentRepository employmentRepository, StudentRepository studentRepository) {
+    private final Validator validator;
+
+    // Employments are read for most writes, but change rarely
+    private final ReferenceCache<Employment> cache;
+
+    private final ListSnapshots listSnapshots;
+
+    private final EntityVersions entityVersions;
+
+    public EmploymentService(EmploymentRepository employmentRepository, StudentRepository studentRepository, Validator validator, ReferenceCacheProperties referenceCacheProperties, ListSnapshots listSnapshots, EntityVersions entityVersions) {
         this.employmentRepository = employmentRepository;
         this.studentRepository = studentRepository;
+        this.validator = validator;
+        this.listSnapshots = listSnapshots;
+        this.entityVersions = entityVersions;
+        this.cache = new ReferenceCache<>(referenceCacheProperties, Employment::getId,
+                Employment::getName);
     }
 
     /**
@@ -33,12 +54,70 @@ public class EmploymentService {
         return this.employmentRepository.findAll();
     }
 
+    /**
+     * Reads all employments from the snapshot, which is only built again after a write
+     *
+     * @return ListSnapshot with all employments as JSON
+     */
+    public ListSnapshot getEmploymentSnapshot() {
+        return this.listSnapshots.employments.get();
+    }
+
+    /**
+     * @return entity tag of all employments, which changes with each write
+     */
+    public String getEmploymentsTag() {
+        return this.entityVersions.employments();
+    }
+
+    /**
+     * @param id of employment
+     * @return entity tag of the employment, which changes with each write of it
+     */
+    public String getEmploymentTag(final Long id) {
+        return this.entityVersions.employment(id);
+    }
+
+    /**
+     * @param after ID of the last employment of the previous page, 0 for the first page
+     * @param limit maximum number of employments
+     * @return List with the next employments ordered by ID
+     */
+    public List<Employment> getEmployments(final long after, final int limit) {
+        return this.employmentRepository.findPage(after, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Reads all employments with a database cursor. Must be used inside a transaction and the stream
+     * must be closed.
+     *
+     * @return Stream with all employments ordered by ID
+     */
+    public Stream<Employment> streamAllEmployments() {
+        return this.employmentRepository.streamAll();
+    }
+
     /**
      * @param id of employment
-     * @return Optional<Employment>
+     * @return Optional<Employment> from the cache, which must not be changed
      */
     public Optional<Employment> getEmployment(final Long id) {
-        return this.employmentRepository.findById(id);
+        return this.cache.get(id, this.employmentRepository::findById);
+    }
+
+    /**
+     * @param name of employment
+     * @return Optional<Employment> from the cache, which must not be changed
+     */
+    public Optional<Employment> getEmployment(final String name) {
+        return this.cache.get(name, this.employmentRepository::findByName);
+    }
+
+    /**
+     * @return hits, misses and evictions of the employment cache
+     */
+    public CacheStatistics getCacheStatistics() {
+        return this.cache.getStatistics();
     }
 
     /**
@@ -46,7 +125,30 @@ public class EmploymentService {
      * @return the saved employment
      */
     public Employment setEmployment(final Employment employment) {
-        return this.employmentRepository.save(employment);
+        final Employment saved = this.employmentRepository.save(employment);
+        this.invalidate(saved.getId());
+        return saved;
+    }
+
+    /**
+     * Edits a saved employment with a single conditional update
+     *
+     * @param employment edited employment with the version it was read with
+     * @return Optional with the edited employment, empty if it does not exist or was edited since
+     * @throws ConstraintViolationException if the employment is invalid
+     */
+    public Optional<Employment> editEmployment(final Employment employment) {
+        final Set<ConstraintViolation<Employment>> violations = this.validator.validate(employment);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        if (this.employmentRepository.updateIfCurrent(employment.getId(), employment.getVersion(),
+                employment.getName()) == 0) {
+            return Optional.empty();
+        }
+        this.invalidate(employment.getId());
+        employment.setVersion(employment.getVersion() + 1);
+        return Optional.of(employment);
     }
 
     /**
@@ -63,14 +165,23 @@ public class EmploymentService {
             // Checks if there is not any student with that employment.
             // if there is a student, return null to give the information that it is not
             // deletable
-            if (this.studentRepository.findAll().stream()
-                    .anyMatch(student -> student.getEmployment().equals(employment.get()))) {
+            if (this.studentRepository.existsByEmploymentId(id)) {
                 return Optional.empty();
             }
 
             this.employmentRepository.deleteById(id);
+            this.invalidate(id);
         }
 
         return employment;
     }
+
+    /**
+     * Invalidates a written employment in the cache and counts the write, which also replaces the
+     * snapshots of employments and students
+     */
+    private void invalidate(final Long id) {
+        this.cache.invalidate(id);
+        this.entityVersions.employments.increment(id);
+    }
 }
@@ -0,0 +1,80 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+
+/**
+ * Version counters of all tables, which the services increment for each write
+ * <p>
+ * The entity tags of the lists and entities are built from these versions, so a client can be
+ * told that its copy is current without a query. An entity includes the entities it references,
+ * so its tag also contains the versions of their tables. The counters start again with each
+ * start of the application, so the tags contain a random start ID as well.
+ */
+@Component
+class EntityVersions {
+
+    final VersionCounter students = new VersionCounter();
+
+    final VersionCounter projects = new VersionCounter();
+
+    final VersionCounter employments = new VersionCounter();
+
+    final VersionCounter periods = new VersionCounter();
+
+    final VersionCounter allocations = new VersionCounter();
+
+    private final String start = Long.toUnsignedString(new SecureRandom().nextLong(), 36);
+
+    String students() {
+        return this.tag("students", this.students.get(), this.employments.get());
+    }
+
+    String student(final Long id) {
+        return this.tag("student-" + id, this.students.get(id), this.employments.get());
+    }
+
+    String projects() {
+        return this.tag("projects", this.projects.get(), this.periods.get());
+    }
+
+    String project(final Long id) {
+        return this.tag("project-" + id, this.projects.get(id), this.periods.get());
+    }
+
+    String employments() {
+        return this.tag("employments", this.employments.get());
+    }
+
+    String employment(final Long id) {
+        return this.tag("employment-" + id, this.employments.get(id));
+    }
+
+    String periods() {
+        return this.tag("periods", this.periods.get());
+    }
+
+    String period(final Long id) {
+        return this.tag("period-" + id, this.periods.get(id));
+    }
+
+    String allocations() {
+        return this.tag("allocations", this.allocations.get(), this.projects.get(),
+                this.periods.get(), this.students.get(), this.employments.get());
+    }
+
+    String allocation(final Long id) {
+        return this.tag("allocation-" + id, this.allocations.get(id), this.projects.get(),
+                this.periods.get(), this.students.get(), this.employments.get());
+    }
+
+    private String tag(final String name, final long... versions) {
+        final StringBuilder tag = new StringBuilder("\"").append(this.start).append('-')
+                .append(name);
+        for (final long version : versions) {
+            tag.append('-').append(version);
+        }
+        return tag.append('"').toString();
+    }
+}
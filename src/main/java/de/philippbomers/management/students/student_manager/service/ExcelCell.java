@@ -0,0 +1,53 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import org.apache.poi.ss.usermodel.CellType;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * A single Excel cell as seen by the import, independent of the reading engine.
+ * <p>
+ * Both the workbook (DOM) engine and the streaming (SAX) engine hand their cells to the same row
+ * processing in FileService, so both engines produce the same report.
+ */
+interface ExcelCell {
+
+    /**
+     * @return row number of the cell, beginning by 0
+     */
+    int getRowIndex();
+
+    /**
+     * @return column number of the cell, beginning by 0
+     */
+    int getColumnIndex();
+
+    /**
+     * @return type of the cell. Formula cells are always of type FORMULA.
+     */
+    CellType getCellType();
+
+    /**
+     * Converts the cell into a Java Object. The conversion is done lazily, so conversion issues
+     * are reported for the cell that caused them.
+     *
+     * @return LocalDate, Double, String or Boolean depending on the cell type. Formula cells return
+     * the formula as String.
+     */
+    Object getValue();
+
+    /**
+     * Converts an Excel date into a Java LocalDate Object
+     * <p>
+     * TODO: Currently it can only handle the date format yyyy-MM-dd. Please add more date formats
+     * for a better compatibility
+     *
+     * @param date Excel date as java.util.Date
+     * @return LocalDate
+     */
+    static LocalDate toLocalDate(final Date date) {
+        return LocalDate.parse(new SimpleDateFormat("yyyy-MM-dd").format(date));
+    }
+}
@@ -0,0 +1,86 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.FileImport;
+import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
+import de.philippbomers.management.students.student_manager.repository.FileImportRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The service class provides a connection between the Controller and Repository and can include
+ * further logic for validation, data evaluation and processing
+ * <p>
+ * Remembers imported files and rows. A file that is uploaded again is skipped, as long as no
+ * allocation was added, edited or deleted since its import. The version counters of the
+ * allocations begin anew with each start of the application, so a file is imported again after a
+ * restart. Rows that already created an allocation are skipped, so a changed file only saves its
+ * new rows.
+ */
+@Service
+public class FileImportService {
+
+    // We use constructor based injection because field based injection is not immutable
+
+    private final FileImportRepository fileImportRepository;
+
+    private final AllocationRepository allocationRepository;
+
+    private final EntityVersions entityVersions;
+
+    public FileImportService(FileImportRepository fileImportRepository, AllocationRepository allocationRepository, EntityVersions entityVersions) {
+        this.fileImportRepository = fileImportRepository;
+        this.allocationRepository = allocationRepository;
+        this.entityVersions = entityVersions;
+    }
+
+    /**
+     * @param hash of file and import settings
+     * @return Optional<FileImport> if the file was imported and the imported allocations did not
+     * change since
+     */
+    public Optional<FileImport> findUnchangedImport(final String hash) {
+        return this.fileImportRepository.findByHash(hash)
+                .filter(fileImport -> this.entityVersions.allocations()
+                        .equals(fileImport.getAllocationsTag()));
+    }
+
+    /**
+     * Saves or updates the record of an imported file. If the same file is imported twice at the
+     * same time, the record of the other import is updated.
+     *
+     * @param hash   of file and import settings
+     * @param report of the import
+     * @return the saved record
+     */
+    public FileImport setFileImport(final String hash, final String report) {
+        try {
+            return this.saveFileImport(this.fileImportRepository.findByHash(hash)
+                    .orElseGet(() -> FileImport.builder().hash(hash).build()), report);
+        } catch (final DataIntegrityViolationException e) {
+
+            // Another import saved a record of the same file in the meantime
+            return this.saveFileImport(
+                    this.fileImportRepository.findByHash(hash).orElseThrow(() -> e), report);
+        }
+    }
+
+    private FileImport saveFileImport(final FileImport fileImport, final String report) {
+        fileImport.setReport(report);
+        fileImport.setImportedAt(Instant.now());
+        fileImport.setAllocationsTag(this.entityVersions.allocations());
+        return this.fileImportRepository.save(fileImport);
+    }
+
+    /**
+     * @param rowHashes hashes of imported rows
+     * @return the hashes of rows that already created an allocation
+     */
+    public Set<String> getImportedRows(final Collection<String> rowHashes) {
+        return rowHashes.isEmpty() ? Set.of() : this.allocationRepository.findImportHashes(rowHashes);
+    }
+}
@@ -1,26 +1,76 @@
 package de.philippbomers.management.students.student_manager.service;
 
+import de.philippbomers.management.students.student_manager.config.ImportProperties;
 import de.philippbomers.management.students.student_manager.entity.*;
+import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
+import org.apache.poi.UnsupportedFileFormatException;
+import org.apache.poi.ooxml.POIXMLTypeLoader;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
-
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.SimpleDateFormat;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FileService {
@@ -37,24 +87,49 @@ public class FileService {
 
     protected final StudentService studentService;
 
-    // Variable initialization to read the fields.
-    // I added more variables than actual needed for possible future feature
-    // upgrades.
-    LocalDate localDate;
-    Double doubleValue;
-    String stringValue;
-    Boolean booleanValue;
-    String formulaValue;
+    protected final ImportProperties importProperties;
+
+    protected final TransactionTemplate transactionTemplate;
+
+    protected final Validator validator;
+
+    protected final FileImportService fileImportService;
+
+    protected final AllocationRepository allocationRepository;
+
+    protected final EntityManager entityManager;
+
+    // Imports the sheets of a workbook in parallel
+    private final ForkJoinPool sheetPool;
 
-    String firstName, lastName, employmentName, projectName;
-    LocalDate allocationFrom, allocationTo, projectFrom, projectTo;
+    // Column titles of the export, in the order that the import reads them
+    private static final String[] EXPORT_COLUMNS = {"first_name", "last_name", "employment_name",
+            "allocation_from", "allocation_to", "project_name", "project_from", "project_to"};
 
-    public FileService(EmploymentService employmentService, PeriodService periodService, ProjectService projectService, AllocationService allocationService, StudentService studentService) {
+    // Number of rows that the export keeps in memory
+    private static final int EXPORT_WINDOW_SIZE = 100;
+
+    public FileService(EmploymentService employmentService, PeriodService periodService, ProjectService projectService, AllocationService allocationService, StudentService studentService, ImportProperties importProperties, TransactionTemplate transactionTemplate, Validator validator, FileImportService fileImportService, AllocationRepository allocationRepository, EntityManager entityManager) {
         this.employmentService = employmentService;
         this.periodService = periodService;
         this.projectService = projectService;
         this.allocationService = allocationService;
         this.studentService = studentService;
+        this.importProperties = importProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.fileImportService = fileImportService;
+        this.allocationRepository = allocationRepository;
+        this.entityManager = entityManager;
+        this.sheetPool = new ForkJoinPool(importProperties.getSheetParallelism());
+    }
+
+    /**
+     * Stops the sheet imports when the application shuts down
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.sheetPool.shutdownNow();
     }
 
     /**
@@ -64,14 +139,51 @@ public class FileService {
      * @return String with status
      */
     public String importExcelFile(final MultipartFile multipartFile) {
-        return this.importExcelFile(multipartFile, 0, 1, 0);
+        return this.importExcelFile(multipartFile, true);
+    }
+
+    /**
+     * Constructor with standard table beginning on the top left
+     *
+     * @param multipartFile .xlsx file
+     * @param streaming     true to read the file row by row (SAX), false to load the whole
+     *                      workbook into memory (DOM)
+     * @return String with status
+     */
+    public String importExcelFile(final MultipartFile multipartFile, final boolean streaming) {
+        return this.importExcelFile(multipartFile, 0, 1, 0, streaming);
+    }
+
+    /**
+     * Imports the file with the streaming engine
+     *
+     * @param multipartFile .xlsx file
+     * @param sheetNumber   number of working sheet, beginning by 0
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @return String with status
+     */
+    public String importExcelFile(final MultipartFile multipartFile, final int sheetNumber,
+                                  final int beginAtRow, final int beginAtColumn) {
+        return this.importExcelFile(multipartFile, sheetNumber, beginAtRow, beginAtColumn, true);
     }
 
     /**
      * Current Excel table structure: first_name last_name employment_name allocation_from
      * allocation_to project_name project_from project_to
      * <p>
-     * If you begin at the top left, the call would be: importExcelFile(multipartFile, 0, 1, 0);
+     * If you begin at the top left, the call would be: importExcelFile(multipartFile, 0, 1, 0, true);
+     * <p>
+     * The streaming engine reads the sheet with the XSSF event API and keeps only the current row
+     * in memory. The workbook engine loads the whole workbook into memory. Both engines produce the
+     * same report.
+     * <p>
+     * Rows are saved in chunks. Each chunk is saved in one transaction, so its inserts are sent to
+     * the database in JDBC batches.
+     * <p>
+     * A file that was already imported with the same settings is skipped, as long as no imported
+     * allocation was added, edited or deleted since. Otherwise, rows that already created an
+     * allocation are skipped, so a changed file only saves its new rows.
      *
      * <a href="https://poi.apache.org/">Developed with Apache POI API (5.2.2).</a>
      *
@@ -79,362 +191,1156 @@ public class FileService {
      * @param sheetNumber   number of working sheet, beginning by 0
      * @param beginAtRow    row number of data, beginning by 1
      * @param beginAtColumn column number of data, beginning by 0
+     * @param streaming     true to read the file row by row (SAX), false to load the whole
+     *                      workbook into memory (DOM)
      * @return String with status
      */
-    public String importExcelFile(final MultipartFile multipartFile, int sheetNumber,
-                                  final int beginAtRow, final int beginAtColumn) {
-
-        /*
-          TODO: Shorten this method
-         */
+    public String importExcelFile(final MultipartFile multipartFile, final int sheetNumber,
+                                  final int beginAtRow, final int beginAtColumn,
+                                  final boolean streaming) {
+
+        // The workbook engine reads the upload directly, it needs no file
+        if (!streaming) {
+            final String hash;
+            try (InputStream input = multipartFile.getInputStream()) {
+                hash = hashFile(input, "xlsx", sheetNumber, beginAtRow, beginAtColumn);
+            } catch (final IOException e) {
+                return "The file could not be opened or read.";
+            }
 
-        /*
-         * TODO: issueCollector - write easily readable exception messages for users
-         */
+            final ImportProgress progress = new ImportProgress();
+            return this.importOnce(hash, progress, () -> this.importSheet(progress, session -> {
+                try (InputStream input = multipartFile.getInputStream()) {
+                    this.readSheet(input, sheetNumber, beginAtRow, beginAtColumn, session);
+                }
+            }));
+        }
 
-        File file;
-        FileInputStream fileInputStream;
-        XSSFWorkbook workbook;
-        XSSFSheet sheet;
-        final AtomicReference<StringBuilder> issueCollector = new AtomicReference<>(new StringBuilder());
+        // The streaming engine needs random access to the .xlsx package
+        final Path file;
 
         try {
 
-            // Opens file
-            file = this.multipartToFile(multipartFile);
+            // Moves the upload into the spool directory
+            file = this.spool(multipartFile);
 
-            // Reads the file
-            fileInputStream = new FileInputStream(file);
+        } catch (final IOException e) {
+            // Return an error message
+            return "The file could not be opened or read.";
+        }
 
-            // Creates Workbook instance holding reference to .xlsx file
-            // Automatically throws an issue when the file is not an .xlsx file
-            workbook = new XSSFWorkbook(fileInputStream);
+        try {
+            return this.importExcelFile(file.toFile(), sheetNumber, beginAtRow, beginAtColumn,
+                    true, new ImportProgress());
+        } finally {
 
+            // Deletes the file from server, also if the import failed
+            deleteSpooledFile(file);
+        }
+    }
 
-        } catch (IOException e) {
-            // Return an error message
+    /**
+     * Imports an .xlsx file that is already saved on the server. The file is not deleted.
+     *
+     * @param file          .xlsx file
+     * @param sheetNumber   number of working sheet, beginning by 0
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @param streaming     true to read the file row by row (SAX), false to load the whole
+     *                      workbook into memory (DOM)
+     * @param progress      counts the saved rows and tells if the import was cancelled
+     * @return String with status
+     * @throws CancellationException if the import was cancelled
+     */
+    public String importExcelFile(final File file, final int sheetNumber, final int beginAtRow,
+                                  final int beginAtColumn, final boolean streaming,
+                                  final ImportProgress progress) {
+        final String hash;
+        try (InputStream input = new FileInputStream(file)) {
+            hash = hashFile(input, "xlsx", sheetNumber, beginAtRow, beginAtColumn);
+        } catch (final IOException e) {
             return "The file could not be opened or read.";
         }
 
-        // Set first sheet if user inserts an invalid number
-        if (workbook.getNumberOfSheets() >= sheetNumber || workbook.getNumberOfSheets() < 0) {
-            sheetNumber = 0;
+        return this.importOnce(hash, progress, () -> this.importSheet(progress, session -> {
+            if (streaming) {
+                this.readSheetStreaming(file, sheetNumber, beginAtRow, beginAtColumn, session);
+            } else {
+                try (InputStream input = new FileInputStream(file)) {
+                    this.readSheet(input, sheetNumber, beginAtRow, beginAtColumn, session);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Skips the import if the same file was imported with the same settings and the imported
+     * allocations did not change since. Otherwise, runs the import and remembers the file, if all
+     * of its rows were saved.
+     *
+     * @param hash     of file and import settings
+     * @param progress of the import, tells if all rows were saved
+     * @param importer runs the import and returns the report
+     * @return String with status
+     */
+    private String importOnce(final String hash, final ImportProgress progress,
+                              final Supplier<String> importer) {
+        final Optional<FileImport> fileImport = this.fileImportService.findUnchangedImport(hash);
+        if (fileImport.isPresent()) {
+            return "The file was already imported and nothing changed since.\n"
+                    + fileImport.get().getReport();
+        }
+
+        final String report = importer.get();
+
+        // Files that could not be read or have failed rows are imported again, so the failed
+        // rows can be saved by the next upload
+        if (progress.isCompleted() && progress.getRowsFailed() == 0) {
+            this.fileImportService.setFileImport(hash, report);
+        }
+        return report;
+    }
+
+    /**
+     * Hashes the content of a file together with the import settings
+     *
+     * @param input    content of the file, closed by the caller
+     * @param settings of the import, e.g. the sheet number
+     * @return SHA-256 hash, encoded in Base64
+     * @throws IOException if the file could not be read
+     */
+    private static String hashFile(final InputStream input, final Object... settings)
+            throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
         }
+        digest.update(Arrays.toString(settings).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Imports a CSV or TSV file with the standard table beginning on the top left. The file uses
+     * the same columns as the Excel import and dates in the format yyyy-MM-dd.
+     *
+     * @param input     content of the file in UTF-8, closed by the caller
+     * @param delimiter between the fields, e.g. ',' or '\t'
+     * @return String with status
+     */
+    public String importCsvFile(final InputStream input, final char delimiter) {
+        return this.importCsvFile(input, delimiter, 1, 0, new ImportProgress());
+    }
 
-        // Gets first/desired sheet from the workbook
-        sheet = workbook.getSheetAt(sheetNumber);
+    /**
+     * Imports a CSV or TSV file row by row. The file is never saved on the server and only the
+     * current row is kept in memory, so the size of the file is not limited.
+     *
+     * @param input         content of the file in UTF-8, closed by the caller
+     * @param delimiter     between the fields, e.g. ',' or '\t'
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @param progress      counts the saved rows and tells if the import was cancelled
+     * @return String with status
+     * @throws CancellationException if the import was cancelled
+     */
+    public String importCsvFile(final InputStream input, final char delimiter,
+                                final int beginAtRow, final int beginAtColumn,
+                                final ImportProgress progress) {
+        return this.importSheet(progress, session -> this.readCsv(input, delimiter, beginAtRow,
+                beginAtColumn, session));
+    }
 
-        // Iterate through each row one by one
-        final AtomicReference<Iterator<Row>> rowIterator = new AtomicReference<>(sheet.iterator());
+    /**
+     * Imports several sheets of an .xlsx file in parallel with the streaming engine. Each sheet
+     * uses the same table structure as importExcelFile(multipartFile).
+     *
+     * @param multipartFile .xlsx file
+     * @param sheetNumbers  numbers of the sheets, beginning by 0. All sheets if null or empty.
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @return String with status of each sheet
+     */
+    public String importExcelSheets(final MultipartFile multipartFile,
+                                    final List<Integer> sheetNumbers, final int beginAtRow,
+                                    final int beginAtColumn) {
+        final Path file;
 
-        // call cellIterator to continue or break over multiple loops
-        cellIterator:
-        while (rowIterator.get().hasNext()) {
-            final AtomicReference<Row> row = new AtomicReference<>(rowIterator.get().next());
+        try {
 
-            // Selects the actual field
-            final AtomicInteger actualNumber = new AtomicInteger(0);
+            // Moves the upload into the spool directory
+            file = this.spool(multipartFile);
 
-            // Checks if the table content row begins
-            if (row.get().getRowNum() >= beginAtRow) {
+        } catch (final IOException e) {
+            // Return an error message
+            return "The file could not be opened or read.";
+        }
 
-                // For each row, iterates through all the columns
-                final AtomicReference<Iterator<Cell>> cellIterator = new AtomicReference<>(row.get().cellIterator());
-                while (cellIterator.get().hasNext()) {
-                    final AtomicReference<Cell> cell = new AtomicReference<>(cellIterator.get().next());
+        try {
+            return this.importExcelSheets(file.toFile(), sheetNumbers, beginAtRow, beginAtColumn,
+                    new ImportProgress());
+        } finally {
 
-                    // checks if the table content column begins
-                    if (cell.get().getColumnIndex() >= beginAtColumn) {
+            // Deletes the file from server, also if the import failed
+            deleteSpooledFile(file);
+        }
+    }
 
-                        try {
-                            /*
-                              TODO: add the possibility to let the user decide the row number of
-                              each entry
-                             */
+    /**
+     * Imports several sheets of an .xlsx file that is already saved on the server. The file is not
+     * deleted.
+     * <p>
+     * Each sheet is parsed and saved by its own task on a fork-join pool, with its own chunks.
+     * Employments, projects and students are shared by the sheets through one registry, so a
+     * project or a student that appears in several sheets is created only once. The saved
+     * students and allocations are loaded once for all sheets.
+     * <p>
+     * The report lists the issues of each sheet in the order of the sheets.
+     *
+     * @param file          .xlsx file
+     * @param sheetNumbers  numbers of the sheets, beginning by 0. All sheets if null or empty.
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @param progress      counts the saved rows of all sheets and tells if the import was
+     *                      cancelled
+     * @return String with status of each sheet
+     * @throws CancellationException if the import was cancelled
+     */
+    public String importExcelSheets(final File file, final List<Integer> sheetNumbers,
+                                    final int beginAtRow, final int beginAtColumn,
+                                    final ImportProgress progress) {
+
+        final String hash;
+        try (InputStream input = new FileInputStream(file)) {
+            hash = hashFile(input, "sheets", sheetNumbers == null ? List.of()
+                    : new TreeSet<>(sheetNumbers), beginAtRow, beginAtColumn);
+        } catch (final IOException e) {
+            return "The file could not be opened or read.";
+        }
 
-                            // reads the current field with the correct format
-                            this.setCurrentField(cell.get());
+        return this.importOnce(hash, progress, () -> this.importSheets(file, sheetNumbers,
+                beginAtRow, beginAtColumn, progress));
+    }
 
-                            // sets the entity field for later save in database
-                            this.addEntities(actualNumber.getAndIncrement());
+    /**
+     * Imports several sheets of an .xlsx file in parallel
+     *
+     * @param file          .xlsx file
+     * @param sheetNumbers  numbers of the sheets, beginning by 0. All sheets if null or empty.
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @param progress      counts the saved rows of all sheets
+     * @return String with status of each sheet
+     */
+    private String importSheets(final File file, final List<Integer> sheetNumbers,
+                                final int beginAtRow, final int beginAtColumn,
+                                final ImportProgress progress) {
 
-                        } catch (final Exception e) {
+        // Shared by all sheets
+        final ImportRegistry registry = new ImportRegistry(this.employmentService,
+                this.projectService, this.studentService, this.allocationRepository);
+        final StringBuilder report = new StringBuilder();
 
-                            // Collects exceptions
-                            issueCollector.get().append("Row: ").append(cell.get().getRowIndex())
-                                    .append(", Column: ").append(cell.get().getColumnIndex()).append(": ")
-                                    .append(e).append(employmentName).append('\n');
+        try {
 
-                            // Clears variables for next iteration
-                            this.clearCurrentRowCache();
+            // Opens the .xlsx package without loading it into memory
+            final OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ);
 
-                            // Continues iteration without saving to database
-                            continue cellIterator;
-                        }
+            try {
+                final XSSFReader reader = new XSSFReader(opcPackage);
+                final CTWorkbook workbook = readWorkbook(reader);
+                final boolean date1904 = isDate1904(workbook);
+                final int numberOfSheets = workbook.getSheets().sizeOfSheetArray();
+
+                // Strings and styles are read once and only read by the sheets
+                final SharedStrings sharedStrings = new ReadOnlySharedStringsTable(opcPackage,
+                        false);
+                final StylesTable stylesTable = reader.getStylesTable();
+
+                // Ignores invalid numbers and uses the first sheet if none is left
+                final boolean allSheets = sheetNumbers == null || sheetNumbers.isEmpty();
+                final Set<Integer> selected = allSheets ? Set.of() : sheetNumbers.stream()
+                        .filter(number -> number >= 0 && number < numberOfSheets)
+                        .collect(Collectors.toSet());
+
+                // Opens the selected sheets in the order of the workbook
+                final List<String> names = new ArrayList<>();
+                final List<Callable<ImportSession>> tasks = new ArrayList<>();
+                final XSSFReader.SheetIterator sheets =
+                        (XSSFReader.SheetIterator) reader.getSheetsData();
+                for (int i = 0; sheets.hasNext(); i++) {
+                    final InputStream sheet = sheets.next();
+                    if (allSheets || selected.contains(i) || (selected.isEmpty() && i == 0)) {
+                        names.add(sheets.getSheetName());
+                        tasks.add(() -> {
+                            final ImportSession session = new ImportSession(registry, progress);
+                            try (sheet) {
+                                this.parseSheet(sheet, sharedStrings, stylesTable, date1904,
+                                        beginAtRow, beginAtColumn, session);
+                            }
+
+                            // Saves the last rows of the sheet
+                            this.saveChunk(session);
+                            return session;
+                        });
+                    } else {
+                        sheet.close();
                     }
                 }
-            }
 
-            try {
+                // Waits for all sheets before the package is closed
+                final List<Future<ImportSession>> sessions = this.sheetPool.invokeAll(tasks);
+                for (int i = 0; i < sessions.size(); i++) {
+                    final ImportSession session = getSheetSession(sessions.get(i));
+                    report.append("Sheet ").append(names.get(i)).append(":\n")
+                            .append(getIssues(session));
+                }
+                progress.complete();
+            } finally {
 
-                // Saves the row to database
-                this.saveToDatabase();
+                // Closes the package without saving it
+                opcPackage.revert();
+            }
 
-            } catch (final Exception e) {
+        } catch (IOException | OpenXML4JException | XmlException | SAXException
+                 | ParserConfigurationException | UnsupportedFileFormatException e) {
+            // Return an error message
+            return "The file could not be opened or read.";
+        }
 
-                // Collects exceptions
-                issueCollector.get().append("Server issue: ").append(e.getMessage()).append("\n");
+        // Returns success message with exception hints
+        return report.append("\n").append("Upload Success!").toString();
+    }
 
+    /**
+     * Waits for the import of a sheet
+     *
+     * @param future of the sheet task
+     * @return state of the finished sheet import
+     */
+    private static ImportSession getSheetSession(final Future<ImportSession> future)
+            throws IOException, SAXException, ParserConfigurationException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("The import was interrupted.");
+        } catch (final ExecutionException e) {
+
+            // Rethrows the issue of the sheet as if it was read in this thread
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
             }
-
-            // Clears the row variables for next iteration
-            this.clearCurrentRowCache();
+            if (e.getCause() instanceof SAXException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof ParserConfigurationException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
+
+    /**
+     * Writes all allocations into an .xlsx file with the table structure of
+     * importExcelFile(multipartFile), so the file can be imported again.
+     * <p>
+     * The allocations are read with a database cursor and written with the SXSSF API of Apache
+     * POI, which keeps only a window of rows in memory and flushes the other rows to a temporary
+     * file. The memory usage does not depend on the number of allocations.
+     *
+     * @param output receives the .xlsx file, closed by the caller
+     * @throws IOException if the file could not be written
+     */
+    public void exportExcelFile(final OutputStream output) throws IOException {
+        final SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_WINDOW_SIZE);
+        workbook.setCompressTempFiles(true);
+
         try {
+            final SXSSFSheet sheet = workbook.createSheet("Allocations");
+            final CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd"));
+
+            // Header row
+            final Row header = sheet.createRow(0);
+            for (int column = 0; column < EXPORT_COLUMNS.length; column++) {
+                header.createCell(column).setCellValue(EXPORT_COLUMNS[column]);
+            }
+
+            // The cursor needs a transaction
+            final TransactionTemplate readOnly = new TransactionTemplate(
+                    Objects.requireNonNull(this.transactionTemplate.getTransactionManager()));
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> {
+                try (Stream<Allocation> allocations = this.allocationRepository.streamAll()) {
+                    final AtomicInteger rowNumber = new AtomicInteger(1);
+                    allocations.forEach(allocation -> {
+                        final Row row = sheet.createRow(rowNumber.getAndIncrement());
+                        row.createCell(0).setCellValue(allocation.getStudent().getFirstName());
+                        row.createCell(1).setCellValue(allocation.getStudent().getLastName());
+                        row.createCell(2).setCellValue(
+                                allocation.getStudent().getEmployment().getName());
+                        setDateCell(row, 3, allocation.getPeriod().getBegin(), dateStyle);
+                        setDateCell(row, 4, allocation.getPeriod().getEnd(), dateStyle);
+                        row.createCell(5).setCellValue(allocation.getProject().getName());
+                        setDateCell(row, 6, allocation.getProject().getPeriod().getBegin(),
+                                dateStyle);
+                        setDateCell(row, 7, allocation.getProject().getPeriod().getEnd(),
+                                dateStyle);
+
+                        // Written rows are not needed anymore. Students and projects are shared
+                        // by many rows, so they stay in the persistence context.
+                        this.entityManager.detach(allocation);
+                        this.entityManager.detach(allocation.getPeriod());
+                    });
+                }
+            });
 
-            // Closes all file handlers
-            fileInputStream.close();
+            workbook.write(output);
+        } finally {
+
+            // Deletes the temporary files of the rows
+            workbook.dispose();
             workbook.close();
+        }
+    }
 
-        } catch (final IOException e) {
+    /**
+     * @param row    of the export
+     * @param column of the cell
+     * @param date   value of the cell
+     * @param style  date format
+     */
+    private static void setDateCell(final Row row, final int column, final LocalDate date,
+                                    final CellStyle style) {
+        final Cell cell = row.createCell(column);
+        cell.setCellValue(date);
+        cell.setCellStyle(style);
+    }
 
-            // Collects exceptions
-            issueCollector.get().append("Server issue: ").append(e.getMessage()).append("\n");
+    /**
+     * Saves an upload as a new file in the spool directory. The file has a generated name, so
+     * uploads with the same name do not collide.
+     * <p>
+     * Uploads that the servlet container already stored on disk are moved instead of copied, as
+     * long as the spool directory is on the same file system.
+     *
+     * @param multipartFile upload to save
+     * @return path of the saved file. The caller has to delete it.
+     * @throws IOException if the upload could not be saved
+     */
+    Path spool(final MultipartFile multipartFile) throws IOException {
+        final Path directory = Files.createDirectories(
+                this.importProperties.getSpoolDirectory().toAbsolutePath());
+        final Path file = Files.createTempFile(directory, "import-", ".xlsx");
+
+        try {
+            multipartFile.transferTo(file.toFile());
+        } catch (final IOException | RuntimeException e) {
+            deleteSpooledFile(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Deletes a file created by spool(multipartFile)
+     *
+     * @param file to delete
+     */
+    static void deleteSpooledFile(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            // The file is inside the spool directory and can be removed later
         }
+    }
+
+    /**
+     * Runs one import: reads the sheet, saves its rows in chunks and creates the report
+     *
+     * @param progress    counts the saved rows and tells if the import was cancelled
+     * @param sheetReader reads the sheet and hands each row to importRow
+     * @return String with status
+     */
+    private String importSheet(final ImportProgress progress, final SheetReader sheetReader) {
+
+        /*
+         * TODO: issueCollector - write easily readable exception messages for users
+         */
+
+        // Lookup indexes to find existing entities without scanning the tables for each row
+        final ImportSession session = new ImportSession(new ImportRegistry(this.employmentService,
+                this.projectService, this.studentService, this.allocationRepository), progress);
 
+        try {
+
+            // Reads the file and saves each row to database
+            // Automatically throws an issue when the file is not an .xlsx file
+            sheetReader.read(session);
 
-        // Deletes the file from server
-        assert file.delete() : "File could not be deleted from Server.";
-        file.delete();
+            // Saves the last rows
+            this.saveChunk(session);
+            progress.complete();
+
+        } catch (IOException | OpenXML4JException | XmlException | SAXException
+                 | ParserConfigurationException | UnsupportedFileFormatException e) {
+            // Return an error message
+            return "The file could not be opened or read.";
+        }
 
         // Returns success message with exception hints
-        return issueCollector.get().append("\n").append("Upload Success!").toString();
+        return getIssues(session).append("\n").append("Upload Success!").toString();
     }
 
     /**
-     * Saves a row to database
+     * @param session state of a finished import
+     * @return the issues of the import and the number of skipped rows
+     */
+    private static StringBuilder getIssues(final ImportSession session) {
+        if (session.getSkippedRows() > 0) {
+            session.getIssues().append("Unchanged rows skipped: ").append(session.getSkippedRows())
+                    .append("\n");
+        }
+        return session.getIssues();
+    }
+
+    /**
+     * Reads a sheet with the workbook engine. The whole workbook is loaded into memory.
      *
-     * @throws Exception if there was any issue
+     * @param input          content of the .xlsx file, closed by the caller
+     * @param sheetNumber    number of working sheet, beginning by 0
+     * @param beginAtRow     row number of data, beginning by 1
+     * @param beginAtColumn  column number of data, beginning by 0
+     * @param session        state of the current import
+     * @throws IOException if the file could not be opened or read
      */
-    private void saveToDatabase() throws Exception {
+    private void readSheet(final InputStream input, int sheetNumber, final int beginAtRow,
+                           final int beginAtColumn, final ImportSession session)
+            throws IOException {
 
-        // Variables for the entities that we save in the database
-        Student currentStudent;
-        Employment currentEmployment;
-        Project currentProject;
+        // Creates Workbook instance holding reference to .xlsx file
+        try (XSSFWorkbook workbook = new XSSFWorkbook(input)) {
+
+            // Set first sheet if user inserts an invalid number
+            if (sheetNumber >= workbook.getNumberOfSheets() || sheetNumber < 0) {
+                sheetNumber = 0;
+            }
+
+            // Gets first/desired sheet from the workbook
+            final XSSFSheet sheet = workbook.getSheetAt(sheetNumber);
+
+            // Iterate through each row one by one
+            for (final Row row : sheet) {
+                final List<ExcelCell> cells = new ArrayList<>();
+                row.cellIterator().forEachRemaining(cell -> cells.add(new WorkbookCell(cell)));
+                this.importRow(row.getRowNum(), cells, beginAtRow, beginAtColumn, session);
+            }
+        }
+    }
+
+    /**
+     * Reads a sheet with the streaming engine. Only the current row is kept in memory.
+     *
+     * @param file           .xlsx file
+     * @param sheetNumber    number of working sheet, beginning by 0
+     * @param beginAtRow     row number of data, beginning by 1
+     * @param beginAtColumn  column number of data, beginning by 0
+     * @param session        state of the current import
+     * @throws IOException if the file could not be opened or read
+     */
+    private void readSheetStreaming(final File file, int sheetNumber, final int beginAtRow,
+                                    final int beginAtColumn, final ImportSession session)
+            throws IOException, OpenXML4JException, XmlException, SAXException,
+            ParserConfigurationException {
+
+        // Opens the .xlsx package without loading it into memory
+        final OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ);
 
         try {
+            final XSSFReader reader = new XSSFReader(opcPackage);
+            final CTWorkbook workbook = readWorkbook(reader);
 
-            // Adds employment
-            // If the employment does not exist, it creates a new one
-            final Optional<Employment> findEmployment = this.employmentService.getAllEmployments()
-                    .stream().filter(emp -> Objects.equals(emp.getName(), this.employmentName)).findFirst();
+            // Set first sheet if user inserts an invalid number
+            if (sheetNumber >= workbook.getSheets().sizeOfSheetArray() || sheetNumber < 0) {
+                sheetNumber = 0;
+            }
 
-            currentEmployment = findEmployment.orElseGet(() -> this.employmentService
-                    .setEmployment(Employment.builder().name(this.employmentName).build()));
+            // Gets first/desired sheet from the workbook
+            final Iterator<InputStream> sheets = reader.getSheetsData();
+            for (int i = 0; i < sheetNumber; i++) {
+                sheets.next().close();
+            }
 
-        } catch (final Exception e) {
+            // Iterate through each row one by one
+            try (InputStream sheet = sheets.next()) {
+                this.parseSheet(sheet, new ReadOnlySharedStringsTable(opcPackage, false),
+                        reader.getStylesTable(), isDate1904(workbook), beginAtRow, beginAtColumn,
+                        session);
+            }
+        } finally {
 
-            // Throws exception if there is any issue
-            throw new Exception(
-                    "Database issue by adding employment " + this.employmentName + ": " + e);
+            // Closes the package without saving it
+            opcPackage.revert();
+        }
+    }
+
+    /**
+     * Reads a CSV or TSV file and hands each row to importRow
+     *
+     * @param input          content of the file in UTF-8, closed by the caller
+     * @param delimiter      between the fields
+     * @param beginAtRow     row number of data, beginning by 1
+     * @param beginAtColumn  column number of data, beginning by 0
+     * @param session        state of the current import
+     * @throws IOException if the file could not be read
+     */
+    private void readCsv(final InputStream input, final char delimiter, final int beginAtRow,
+                         final int beginAtColumn, final ImportSession session) throws IOException {
+        final CsvTokenizer tokenizer = new CsvTokenizer(
+                new InputStreamReader(input, StandardCharsets.UTF_8), delimiter);
+
+        List<String> fields;
+        while ((fields = tokenizer.nextRow()) != null) {
+
+            // Empty lines are skipped like empty rows of a sheet
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+
+            final int rowIndex = tokenizer.getRowIndex();
+            final List<ExcelCell> cells = new ArrayList<>(fields.size());
+            for (int column = 0; column < fields.size(); column++) {
+                cells.add(new CsvCell(rowIndex, column, fields.get(column)));
+            }
+            this.importRow(rowIndex, cells, beginAtRow, beginAtColumn, session);
         }
+    }
+
+    /**
+     * Parses a worksheet with the streaming engine and hands each row to importRow
+     *
+     * @param sheet         XML of the worksheet, closed by the caller
+     * @param sharedStrings strings of the workbook
+     * @param stylesTable   styles of the workbook, used to detect dates
+     * @param date1904      true if the workbook uses the 1904 date system
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @param session       state of the current import
+     */
+    private void parseSheet(final InputStream sheet, final SharedStrings sharedStrings,
+                            final StylesTable stylesTable, final boolean date1904,
+                            final int beginAtRow, final int beginAtColumn,
+                            final ImportSession session)
+            throws IOException, SAXException, ParserConfigurationException {
+        final XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(new StreamingSheetHandler(sharedStrings, stylesTable, date1904,
+                (rowIndex, cells) -> this.importRow(rowIndex, cells, beginAtRow, beginAtColumn,
+                        session)));
+        parser.parse(new InputSource(sheet));
+    }
+
+    /**
+     * Reads the workbook part for the sheets and the date system
+     *
+     * @param reader of the .xlsx package
+     * @return CTWorkbook
+     */
+    private static CTWorkbook readWorkbook(final XSSFReader reader)
+            throws IOException, OpenXML4JException, XmlException {
+        try (InputStream workbookData = reader.getWorkbookData()) {
+            return WorkbookDocument.Factory
+                    .parse(workbookData, POIXMLTypeLoader.DEFAULT_XML_OPTIONS).getWorkbook();
+        }
+    }
+
+    /**
+     * @param workbook part of the .xlsx package
+     * @return true if the workbook uses the 1904 date system
+     */
+    private static boolean isDate1904(final CTWorkbook workbook) {
+        return workbook.isSetWorkbookPr() && workbook.getWorkbookPr().getDate1904();
+    }
+
+    /**
+     * Reads a row and adds it to the current chunk. Used by both engines.
+     *
+     * @param rowIndex      row number, beginning by 0
+     * @param cells         cells of the row in reading order
+     * @param beginAtRow    row number of data, beginning by 1
+     * @param beginAtColumn column number of data, beginning by 0
+     * @param session       state of the current import
+     */
+    private void importRow(final int rowIndex, final List<ExcelCell> cells, final int beginAtRow,
+                           final int beginAtColumn, final ImportSession session) {
+
+        // Stops reading, if the import was cancelled
+        if (session.getProgress().isCancelled()) {
+            throw new CancellationException("The import was cancelled.");
+        }
+
+        // Selects the actual field
+        final AtomicInteger actualNumber = new AtomicInteger(0);
+
+        // Each row is read into its own reader, so concurrent imports do not share any state
+        final ImportRowReader reader = new ImportRowReader();
+
+        // Collects an issue while reading the row
+        String issue = null;
+
+        // Checks if the table content row begins
+        if (rowIndex >= beginAtRow) {
+
+            // For each row, iterates through all the columns
+            for (final ExcelCell cell : cells) {
+
+                // checks if the table content column begins
+                if (cell.getColumnIndex() >= beginAtColumn) {
+
+                    try {
+                        /*
+                          TODO: add the possibility to let the user decide the row number of
+                          each entry
+                         */
+
+                        // reads the current field with the correct format
+                        reader.setCurrentField(cell);
+
+                        // sets the entity field for later save in database
+                        reader.addEntities(actualNumber.getAndIncrement());
+
+                    } catch (final Exception e) {
+
+                        // Collects exceptions
+                        issue = "Row: " + cell.getRowIndex() + ", Column: "
+                                + cell.getColumnIndex() + ": " + e + reader.getEmploymentName()
+                                + '\n';
+
+                        // Continues with the next row without saving to database
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Adds the row to the current chunk
+        session.getPendingRows().add(reader.toImportRow(issue));
+
+        // Saves the chunk when it is full
+        if (session.getPendingRows().size() >= this.importProperties.getChunkSize()) {
+            this.saveChunk(session);
+        }
+    }
+
+    /**
+     * Saves the pending rows in one transaction
+     * <p>
+     * If the transaction fails, the rows are saved again one by one, each in its own transaction,
+     * to find the rows that caused the issue.
+     *
+     * @param session state of the current import
+     */
+    private void saveChunk(final ImportSession session) {
+
+        // Rows that were already imported are skipped
+        final List<ImportRow> rows = this.skipImportedRows(session);
+
+        // Employments, projects and students are found or created first, in their own
+        // transactions, so sheets that are imported at the same time can share them
+        rows.forEach(row -> this.resolveReferences(row, session));
+        this.resolveStudents(rows, session);
+
+        // The saved allocations are loaded before the first chunk transaction, so they never
+        // include allocations that are rolled back
+        session.getRegistry().getSavedAllocations();
+
+        // Issues of this chunk. Added to the report when the chunk was saved.
+        final StringBuilder chunkIssues = new StringBuilder();
+        final AtomicInteger failedRows = new AtomicInteger(0);
 
         try {
+            this.transactionTemplate.executeWithoutResult(status -> rows
+                    .forEach(row -> {
+                        if (!this.saveRow(row, session, chunkIssues)) {
+                            failedRows.incrementAndGet();
+                        }
+                    }));
+            session.commit();
+            session.getIssues().append(chunkIssues);
+            session.getProgress().addRows(rows.size(), failedRows.get());
+
+        } catch (final RuntimeException e) {
+
+            // Entities of the rolled back chunk do not exist in the database
+            session.rollback();
+
+            rows.forEach(row -> {
+                final StringBuilder rowIssues = new StringBuilder();
+                try {
+                    this.transactionTemplate
+                            .executeWithoutResult(status -> this.saveRow(row, session, rowIssues));
+                    session.commit();
+                    session.getProgress().addRows(1, rowIssues.isEmpty() ? 0 : 1);
+                } catch (final RuntimeException rowException) {
+                    session.rollback();
+
+                    // Reports the failed transaction, if the row did not report anything else
+                    if (rowIssues.isEmpty()) {
+                        rowIssues.append("Server issue: ").append(rowException.getMessage())
+                                .append("\n");
+                    }
+                    session.getProgress().addRows(1, 1);
+                }
+                session.getIssues().append(rowIssues);
+            });
+        }
 
-            // Adds student
-            // If the student does not exist, it creates a new one.
-            // Adds the employment from above.
-            final Optional<Student> findStudent = this.studentService.getAllStudents().stream()
-                    .filter(student -> Objects.equals(student.getFirstName(), firstName)
-                            && Objects.equals(student.getLastName(), lastName)
-                            && Objects.equals(student.getEmployment().getName(), employmentName))
-                    .findFirst();
+        session.getPendingRows().clear();
+    }
 
-            currentStudent = findStudent.orElseGet(() -> this.studentService.setStudent(Student.builder().firstName(firstName)
-                    .lastName(lastName).employment(currentEmployment).build()));
+    /**
+     * Hashes the pending rows and removes the rows that already created an allocation, also rows
+     * that appear twice in the chunk. Rows with issues are kept for the report.
+     *
+     * @param session state of the current import
+     * @return the rows to save
+     */
+    private List<ImportRow> skipImportedRows(final ImportSession session) {
+        final Set<String> newRows = new HashSet<>();
+        final List<ImportRow> rows = new ArrayList<>();
+
+        for (final ImportRow row : session.getPendingRows()) {
+            if (row.getIssue() == null) {
+                row.setHash(session.hashRow(row));
+                if (!newRows.add(row.getHash())) {
+                    continue;
+                }
+            }
+            rows.add(row);
+        }
 
-        } catch (final Exception e) {
+        // One query for the whole chunk
+        final Set<String> importedRows = this.fileImportService.getImportedRows(newRows);
+        rows.removeIf(row -> row.getHash() != null && importedRows.contains(row.getHash()));
 
-            // Throws exception if there is any issue
-            throw new Exception("Database issue by adding student " + this.firstName + " "
-                    + this.lastName + ": " + e);
+        final int skippedRows = session.getPendingRows().size() - rows.size();
+        session.addSkippedRows(skippedRows);
+        session.getProgress().addRows(skippedRows, 0);
+        return rows;
+    }
+
+    /**
+     * Finds or creates the employment and the project of a row. Issues are kept in the row and
+     * reported when the row is saved.
+     *
+     * @param row     to resolve
+     * @param session state of the current import
+     */
+    private void resolveReferences(final ImportRow row, final ImportSession session) {
+
+        // Rows with issues while reading are not saved
+        if (row.getIssue() != null) {
+            return;
         }
 
         try {
 
-            // Adds project
+            // If the employment does not exist, it creates a new one
+            row.setEmployment(session.getRegistry().findOrCreateEmployment(row.getEmploymentName(),
+                    () -> this.transactionTemplate.execute(status -> this.employmentService
+                            .setEmployment(this.validate(Employment.builder()
+                                    .name(row.getEmploymentName()).build())))));
+
             // If the project does not exist, creates a new one including the given period.
-            final AtomicReference<Optional<Project>> findProject = new AtomicReference<>(this.projectService.getAllProjects().stream()
-                    .filter(project -> project.getName().equals(this.projectName)).findFirst());
+            row.setProject(session.getRegistry().findOrCreateProject(row.getProjectName(),
+                    () -> this.transactionTemplate.execute(status -> this.projectService
+                            .setProject(this.validate(Project.builder()
+                                    .name(row.getProjectName()).period(this.validate(Period
+                                            .builder().begin(row.getProjectFrom())
+                                            .end(row.getProjectTo()).build()))
+                                    .build())))));
+
+        } catch (final RuntimeException e) {
+            row.setReferenceIssue(e);
+        }
+    }
+
+    /**
+     * Finds or creates the students of the rows that have an employment. The new students of the
+     * chunk are created in one transaction. Issues are kept in the row and reported when the row
+     * is saved.
+     *
+     * @param rows    to resolve
+     * @param session state of the current import
+     */
+    private void resolveStudents(final List<ImportRow> rows, final ImportSession session) {
+        final List<ImportRow> resolvable = rows.stream()
+                .filter(row -> row.getIssue() == null && row.getEmployment() != null).toList();
+        final List<CompletableFuture<Student>> students = session.getRegistry()
+                .findOrCreateStudents(resolvable.stream().map(row -> Student.builder()
+                        .firstName(row.getFirstName()).lastName(row.getLastName())
+                        .employment(row.getEmployment()).build()).toList(), this::createStudents);
+
+        for (int i = 0; i < resolvable.size(); i++) {
+            try {
+
+                // Waits for students that another sheet is creating
+                resolvable.get(i).setStudent(students.get(i).join());
+            } catch (final CompletionException e) {
+                resolvable.get(i).setReferenceIssue(
+                        e.getCause() instanceof Exception cause ? cause : e);
+            }
+        }
+    }
+
+    /**
+     * Saves new students in one transaction. The given students are copied, so they can be saved
+     * again if the transaction is rolled back.
+     *
+     * @param students new students
+     * @return the saved students in the same order
+     */
+    private List<Student> createStudents(final List<Student> students) {
+        return this.transactionTemplate.execute(status -> students.stream()
+                .map(student -> this.studentService.setStudent(this.validate(Student.builder()
+                        .firstName(student.getFirstName()).lastName(student.getLastName())
+                        .employment(student.getEmployment()).build())))
+                .toList());
+    }
 
-            currentProject = findProject.get().orElseGet(() -> this.projectService.setProject(Project
-                    .builder().name(this.projectName).period(Period.builder()
-                            .begin(this.projectFrom).end(this.projectTo).build())
-                    .build()));
+    /**
+     * Saves a row to database or reports its issue
+     *
+     * @param row     to save
+     * @param session state of the current import
+     * @param issues  collects the issues of the row
+     * @return true if the row was saved
+     */
+    private boolean saveRow(final ImportRow row, final ImportSession session,
+                            final StringBuilder issues) {
+
+        // Rows with issues while reading are not saved
+        if (row.getIssue() != null) {
+            issues.append(row.getIssue());
+            return false;
+        }
+
+        try {
+
+            // Saves the row to database
+            this.saveToDatabase(row, session);
+            return true;
 
         } catch (final Exception e) {
 
+            // Collects exceptions
+            issues.append("Server issue: ").append(e.getMessage()).append("\n");
+            return false;
+        }
+    }
+
+    /**
+     * Saves a row to database
+     *
+     * @param row     values of the row
+     * @param session state of the current import
+     * @throws Exception if there was any issue
+     */
+    private void saveToDatabase(final ImportRow row, final ImportSession session) throws Exception {
+
+        // Variables for the entities that we save in the database
+        Student currentStudent;
+        Employment currentEmployment;
+        Project currentProject;
+
+        // Adds employment
+        // The employment was found or created before the chunk transaction
+        currentEmployment = row.getEmployment();
+        if (currentEmployment == null) {
+
             // Throws exception if there is any issue
-            throw new Exception("Database issue by adding project " + this.projectName + ": " + e);
+            throw new Exception("Database issue by adding employment " + row.getEmploymentName()
+                    + ": " + row.getReferenceIssue());
+        }
+
+        // Adds student
+        // The student was found or created before the chunk transaction
+        currentStudent = row.getStudent();
+        if (currentStudent == null) {
+
+            // Throws exception if there is any issue
+            throw new Exception("Database issue by adding student " + row.getFirstName() + " "
+                    + row.getLastName() + ": " + row.getReferenceIssue());
+        }
+
+        // Adds project
+        // The project was found or created before the chunk transaction
+        currentProject = row.getProject();
+        if (currentProject == null) {
+
+            // Throws exception if there is any issue
+            throw new Exception("Database issue by adding project " + row.getProjectName() + ": "
+                    + row.getReferenceIssue());
         }
 
         try {
 
+            // The allocation period is fitted into the project period, like it is saved. Missing
+            // dates are taken from the project.
+            final Period projectPeriod = currentProject.getPeriod();
+            final LocalDate begin = row.getAllocationFrom() == null
+                    || row.getAllocationFrom().isBefore(projectPeriod.getBegin())
+                    ? projectPeriod.getBegin() : row.getAllocationFrom();
+            final LocalDate end = row.getAllocationTo() == null
+                    || row.getAllocationTo().isAfter(projectPeriod.getEnd())
+                    ? projectPeriod.getEnd() : row.getAllocationTo();
+
             // Adds allocation
             // If the allocation does not exist, it creates a new one
-            final AtomicReference<Optional<Allocation>> findAllocation = new AtomicReference<>(this.allocationService.getAllAllocations()
-                    .stream()
-                    .filter(alloc -> alloc.getPeriod().getBegin().equals(this.allocationFrom)
-                            && alloc.getPeriod().getEnd().equals(this.allocationTo)
-                            && alloc.getProject().equals(currentProject)
-                            && alloc.getStudent().equals(currentStudent))
-                    .findFirst());
-
-            if (findAllocation.get().isEmpty()) {
-                this.allocationService.setAllocation(Allocation
-                        .builder().project(currentProject).period(Period.builder()
-                                .begin(this.projectFrom).end(this.projectTo).build())
-                        .student(currentStudent).build());
+            if (!session.containsAllocation(currentStudent, currentProject, begin, end)) {
+                final Allocation allocation = this.allocationService.setAllocation(Allocation
+                        .builder().project(currentProject)
+                        .period(Period.builder().begin(begin).end(end).build())
+                        .student(currentStudent).importHash(row.getHash()).build());
+
+                // Invalid allocations are not saved
+                if (allocation == null) {
+                    throw new Exception("Please check the time periods");
+                }
+                session.addAllocation(allocation);
             }
             // When allocation is present, go to the next entry
 
         } catch (final Exception e) {
 
             // Throws exception if there is any issue
-            throw new Exception("Database issue by adding the allocation " + this.firstName + " "
-                    + this.lastName + " to " + this.employmentName + ": " + e);
+            throw new Exception("Database issue by adding the allocation " + row.getFirstName()
+                    + " " + row.getLastName() + " to " + row.getEmploymentName() + ": " + e);
         }
     }
 
     /**
-     * Saves Excel field values to save them into database
+     * Validates an entity before it is saved. Entities are only validated by Hibernate when the
+     * transaction is flushed, which would roll back the whole chunk.
      *
-     * @param currentNumber current order of reading the entities from the table
+     * @param entity to validate
+     * @param <T>    type of entity
+     * @return the valid entity
+     * @throws ConstraintViolationException if the entity is not valid
      */
-    private void addEntities(final int currentNumber) {
-        switch (currentNumber) {
-            case 0 ->
-                // set first name
-                    this.firstName = this.stringValue;
-            case 1 ->
-                // set last name
-                    this.lastName = this.stringValue;
-            case 2 ->
-                // set employment name
-                    this.employmentName = this.stringValue;
-            case 3 ->
-                // set allocation from
-                    this.allocationFrom = this.localDate;
-            case 4 ->
-                // set allocation to
-                    this.allocationTo = this.localDate;
-            case 5 ->
-                // set project name
-                    this.projectName = this.stringValue;
-            case 6 ->
-                // set project from
-                    this.projectFrom = this.localDate;
-            case 7 ->
-                // set project to
-                    this.projectTo = this.localDate;
+    private <T> T validate(final T entity) {
+        final Set<ConstraintViolation<T>> violations = this.validator.validate(entity);
+        if (!violations.isEmpty()) {
+
+            // Sorts the messages, so the report does not depend on the order of the set
+            throw new ConstraintViolationException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted().collect(Collectors.joining(", ")), violations);
         }
+        return entity;
     }
 
     /**
-     * Resets all variables to create new Entities in the next row
+     * Reads a sheet and hands each row to importRow
      */
-    private void clearCurrentRowCache() {
+    @FunctionalInterface
+    private interface SheetReader {
 
-        /*
-          TODO: Think about the alternative of creating a new Entity instead of resetting
-          everything?
-         */
+        void read(ImportSession session) throws IOException, OpenXML4JException, XmlException,
+                SAXException, ParserConfigurationException;
+    }
+
+    /**
+     * A field of a CSV or TSV file. Fields in the format yyyy-MM-dd are dates, like date formatted
+     * cells of a sheet, all other fields are text.
+     */
+    private record CsvCell(int rowIndex, int columnIndex, String text) implements ExcelCell {
+
+        @Override
+        public int getRowIndex() {
+            return this.rowIndex;
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return this.columnIndex;
+        }
+
+        @Override
+        public CellType getCellType() {
+            if (this.text.isEmpty()) {
+                return CellType.BLANK;
+            }
+            return isDate(this.text) ? CellType.NUMERIC : CellType.STRING;
+        }
+
+        @Override
+        public Object getValue() {
+            return switch (this.getCellType()) {
+                case NUMERIC -> LocalDate.parse(this.text);
+                case STRING -> this.text;
+                default -> null;
+            };
+        }
 
-        this.localDate = null;
-        this.doubleValue = null;
-        this.stringValue = null;
-        this.booleanValue = null;
-        this.formulaValue = null;
-
-        this.firstName = null;
-        this.lastName = null;
-        this.employmentName = null;
-        this.projectName = null;
-        this.allocationFrom = null;
-        this.allocationTo = null;
-        this.projectFrom = null;
-        this.projectTo = null;
-    }
-
-    /**
-     * Converts Excel Fields into Java Objects
-     *
-     * @param cell current
-     */
-    private void setCurrentField(final Cell cell) {
-
-        // Reads cell type
-        switch (cell.getCellType()) {
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    // Converts field into Java LocalDate Object
-                    /*
-                      TODO: Currently it can only handle the date format yyyy-MM-dd. Please add
-                      more date formats for a better compatibility
-                     */
-                    this.localDate = LocalDate.parse(
-                            new SimpleDateFormat("yyyy-MM-dd").format(cell.getDateCellValue()));
-                } else {
-                    // Converts field into Double
-                    this.doubleValue = cell.getNumericCellValue();
+        /**
+         * Checks the format yyyy-MM-dd without a regular expression
+         */
+        private static boolean isDate(final String text) {
+            if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (i != 4 && i != 7 && !Character.isDigit(text.charAt(i))) {
+                    return false;
                 }
-                break;
-            case STRING:
-                // Converts field into String
-                this.stringValue = cell.getStringCellValue();
-                break;
-            case BOOLEAN:
-                // Converts field into Boolean
-                this.booleanValue = cell.getBooleanCellValue();
-                break;
-            case FORMULA:
-                // Converts field into String
-                /*
-                  TODO: Make it possible to evaluate field-formulas, so one can upload a sheet with
-                  formulas
-                 */
-                this.formulaValue = cell.getCellFormula();
-                break;
-            default:
-                break;
+            }
+            return true;
         }
     }
 
     /**
-     * Converts a multipart file to File and saves it onto disk
-     *
-     * @param multipart uploaded File
-     * @return locally saved File
+     * A cell of a workbook that was loaded into memory
      */
-    private File multipartToFile(final MultipartFile multipart) throws IOException {
-
-        /*
-          TODO: Add the sources path.
-         */
-        // Creates the filepath with filename
-        final AtomicReference<String> filePath = new AtomicReference<>(multipart.getOriginalFilename());
+    private record WorkbookCell(Cell cell) implements ExcelCell {
 
-        // Creates new and empty file
-        assert filePath.get() != null;
-        AtomicReference<File> convFile = new AtomicReference<>(new File(filePath.get()));
+        @Override
+        public int getRowIndex() {
+            return this.cell.getRowIndex();
+        }
 
-        // Fills the file with content from multipart
-        multipart.transferTo(Path.of(filePath.get()));
+        @Override
+        public int getColumnIndex() {
+            return this.cell.getColumnIndex();
+        }
 
-        // Saves the new File
-        convFile.get().createNewFile();
+        @Override
+        public CellType getCellType() {
+            return this.cell.getCellType();
+        }
 
-        return convFile.get();
+        @Override
+        public Object getValue() {
+            return switch (this.cell.getCellType()) {
+                case NUMERIC -> DateUtil.isCellDateFormatted(this.cell)
+                        ? ExcelCell.toLocalDate(this.cell.getDateCellValue())
+                        : this.cell.getNumericCellValue();
+                case STRING -> this.cell.getStringCellValue();
+                case BOOLEAN -> this.cell.getBooleanCellValue();
+                case FORMULA -> this.cell.getCellFormula();
+                default -> null;
+            };
+        }
     }
 }
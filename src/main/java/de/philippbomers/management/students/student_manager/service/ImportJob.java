@@ -0,0 +1,91 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * An import that runs in the background. Clients poll it for the progress and the final report.
+ * <p>
+ * Getters are handled by Lombok
+ */
+@Getter
+public class ImportJob {
+
+    /**
+     * Lifecycle of a job
+     */
+    public enum Status {
+        QUEUED, RUNNING, FINISHED, FAILED, CANCELLED
+    }
+
+    private final String id;
+
+    private volatile Status status = Status.QUEUED;
+
+    private final Instant submittedAt = Instant.now();
+
+    private volatile Instant startedAt;
+
+    private volatile Instant finishedAt;
+
+    /**
+     * Report of the import, available when the job is finished
+     */
+    private volatile String report;
+
+    @JsonIgnore
+    private final ImportProgress progress = new ImportProgress();
+
+    ImportJob(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return number of rows that were processed, including the failed rows
+     */
+    public long getRowsProcessed() {
+        return this.progress.getRowsProcessed();
+    }
+
+    /**
+     * @return number of rows that could not be saved
+     */
+    public long getRowsFailed() {
+        return this.progress.getRowsFailed();
+    }
+
+    /**
+     * @return processed rows per second since the job started
+     */
+    public double getRowsPerSecond() {
+        if (this.startedAt == null) {
+            return 0;
+        }
+        final Instant end = this.finishedAt == null ? Instant.now() : this.finishedAt;
+        final long millis = Math.max(1, Duration.between(this.startedAt, end).toMillis());
+        return this.getRowsProcessed() * 1000.0 / millis;
+    }
+
+    /**
+     * @return true if the job will not change anymore
+     */
+    @JsonIgnore
+    public boolean isDone() {
+        return this.status == Status.FINISHED || this.status == Status.FAILED
+                || this.status == Status.CANCELLED;
+    }
+
+    void start() {
+        this.startedAt = Instant.now();
+        this.status = Status.RUNNING;
+    }
+
+    void finish(final Status status, final String report) {
+        this.report = report;
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
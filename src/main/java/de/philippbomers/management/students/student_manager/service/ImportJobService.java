@@ -0,0 +1,151 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.config.ImportProperties;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Runs imports in the background on a bounded executor
+ * <p>
+ * Only a few imports run at the same time and only a few more can wait in the queue, so imports
+ * cannot take all the database connections and threads from the API.
+ */
+@Service
+public class ImportJobService {
+
+    // We use constructor based injection because field based injection is not immutable
+
+    private final FileService fileService;
+
+    private final ImportProperties importProperties;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ImportJobService(FileService fileService, ImportProperties importProperties) {
+        this.fileService = fileService;
+        this.importProperties = importProperties;
+        this.executor = new ThreadPoolExecutor(importProperties.getMaxConcurrentJobs(),
+                importProperties.getMaxConcurrentJobs(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(importProperties.getMaxQueuedJobs()),
+                new CustomizableThreadFactory("import-job-"));
+    }
+
+    /**
+     * Saves the upload and queues its import with the standard table beginning on the top left
+     *
+     * @param multipartFile .xlsx file
+     * @param streaming     true to read the file row by row, false to load the whole workbook
+     * @return the queued job
+     * @throws IOException                if the upload could not be saved
+     * @throws RejectedExecutionException if too many imports are running or waiting
+     */
+    public ImportJob submitJob(final MultipartFile multipartFile, final boolean streaming)
+            throws IOException {
+        this.removeExpiredJobs();
+
+        // The upload is deleted after the request, so the job works on its own file
+        final Path file = this.fileService.spool(multipartFile);
+
+        final ImportJob job = new ImportJob(UUID.randomUUID().toString());
+        this.jobs.put(job.getId(), job);
+
+        try {
+            this.executor.execute(() -> this.runJob(job, file, streaming));
+        } catch (final RejectedExecutionException e) {
+            this.jobs.remove(job.getId());
+            FileService.deleteSpooledFile(file);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @param id of job
+     * @return Optional<ImportJob>
+     */
+    public Optional<ImportJob> getJob(final String id) {
+        return Optional.ofNullable(this.jobs.get(id));
+    }
+
+    /**
+     * Cancels a job. Waiting jobs are not started, running jobs stop before the next row.
+     *
+     * @param id of job to cancel
+     * @return the cancelled job
+     */
+    public Optional<ImportJob> cancelJob(final String id) {
+        final Optional<ImportJob> job = this.getJob(id);
+        job.ifPresent(value -> {
+            value.getProgress().cancel();
+            if (value.getStatus() == ImportJob.Status.QUEUED) {
+                value.finish(ImportJob.Status.CANCELLED, "The import was cancelled.");
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Runs the import of a job and deletes the file afterwards
+     *
+     * @param job       to run
+     * @param file      copy of the upload
+     * @param streaming true to read the file row by row, false to load the whole workbook
+     */
+    private void runJob(final ImportJob job, final Path file, final boolean streaming) {
+        try {
+
+            // Jobs cancelled in the queue are not started
+            if (job.getProgress().isCancelled()) {
+                return;
+            }
+
+            job.start();
+            final String report = this.fileService.importExcelFile(file.toFile(), 0, 1, 0,
+                    streaming, job.getProgress());
+            job.finish(ImportJob.Status.FINISHED, report);
+
+        } catch (final CancellationException e) {
+            job.finish(ImportJob.Status.CANCELLED, "The import was cancelled.");
+        } catch (final RuntimeException e) {
+            job.finish(ImportJob.Status.FAILED, "Upload failed: " + e.getMessage());
+        } catch (final Error e) {
+
+            // For example, the workbook did not fit into memory. The job must not stay running,
+            // so it can be polled and removed. The error is still thrown to the executor.
+            job.finish(ImportJob.Status.FAILED, "Upload failed: " + e);
+            throw e;
+        } finally {
+            FileService.deleteSpooledFile(file);
+        }
+    }
+
+    /**
+     * Forgets finished jobs after the configured retention
+     */
+    private void removeExpiredJobs() {
+        final Instant expired = Instant.now().minus(this.importProperties.getJobRetention());
+        this.jobs.values().removeIf(job -> job.isDone() && job.getFinishedAt() != null
+                && job.getFinishedAt().isBefore(expired));
+    }
+
+    /**
+     * Stops the running imports when the application shuts down
+     */
+    @PreDestroy
+    void shutdown() {
+        this.jobs.values().forEach(job -> job.getProgress().cancel());
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one import. It is written by the importing thread and can be read and cancelled from
+ * any other thread.
+ */
+public class ImportProgress {
+
+    private final AtomicLong rowsProcessed = new AtomicLong();
+
+    private final AtomicLong rowsFailed = new AtomicLong();
+
+    private volatile boolean cancelled;
+
+    private volatile boolean completed;
+
+    /**
+     * @param processed number of rows that were processed
+     * @param failed    number of processed rows that could not be saved
+     */
+    void addRows(final long processed, final long failed) {
+        this.rowsProcessed.addAndGet(processed);
+        this.rowsFailed.addAndGet(failed);
+    }
+
+    /**
+     * @return number of rows that were processed, including the failed rows
+     */
+    public long getRowsProcessed() {
+        return this.rowsProcessed.get();
+    }
+
+    /**
+     * @return number of rows that could not be saved
+     */
+    public long getRowsFailed() {
+        return this.rowsFailed.get();
+    }
+
+    /**
+     * Marks that all rows of the file were read and saved or reported
+     */
+    void complete() {
+        this.completed = true;
+    }
+
+    /**
+     * @return true if all rows of the file were read and saved or reported. False if the file
+     * could not be read or the import is still running.
+     */
+    public boolean isCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * Asks the import to stop. Rows that are already saved stay in the database.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * @return true if the import was cancelled
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+}
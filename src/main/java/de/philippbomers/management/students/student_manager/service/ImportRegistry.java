@@ -0,0 +1,229 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.repository.AllocationPeriod;
+import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Find-or-create registry for the entities that are shared by all rows of an import: employments,
+ * projects and students
+ * <p>
+ * The registry can be used by several sheets that are imported at the same time. Each name is
+ * looked up or created only once, the other sheets wait for it and reuse the entity. Employments
+ * and projects are looked up with the unique index of their table, so an import never loads the
+ * whole table. Students and the saved allocations are loaded once for all sheets. New entities
+ * are created in their own transaction, so they are never rolled back together with a chunk.
+ */
+class ImportRegistry {
+
+    private final EmploymentService employmentService;
+
+    private final ProjectService projectService;
+
+    private final StudentService studentService;
+
+    private final AllocationRepository allocationRepository;
+
+    private final Map<String, Employment> employments = new ConcurrentHashMap<>();
+
+    private final Map<String, Project> projects = new ConcurrentHashMap<>();
+
+    // Saved and created students, each completed when it is saved. Loaded lazily.
+    private volatile Map<StudentKey, CompletableFuture<Student>> students;
+
+    // Allocations that were saved before the import, only read by the sessions. Loaded lazily.
+    private volatile Set<AllocationKey> savedAllocations;
+
+    ImportRegistry(final EmploymentService employmentService, final ProjectService projectService,
+                   final StudentService studentService,
+                   final AllocationRepository allocationRepository) {
+        this.employmentService = employmentService;
+        this.projectService = projectService;
+        this.studentService = studentService;
+        this.allocationRepository = allocationRepository;
+    }
+
+    /**
+     * @param name    of employment
+     * @param creator saves a new employment, if no employment has this name
+     * @return the existing or created employment
+     */
+    Employment findOrCreateEmployment(final String name, final Supplier<Employment> creator) {
+
+        // Rows without a name cannot be indexed, the creator reports the issue
+        if (name == null) {
+            return creator.get();
+        }
+        return this.employments.computeIfAbsent(name,
+                key -> findOrCreate(key, this.employmentService::getEmployment, creator));
+    }
+
+    /**
+     * @param name    of project
+     * @param creator saves a new project, if no project has this name
+     * @return the existing or created project
+     */
+    Project findOrCreateProject(final String name, final Supplier<Project> creator) {
+
+        // Rows without a name cannot be indexed, the creator reports the issue
+        if (name == null) {
+            return creator.get();
+        }
+        return this.projects.computeIfAbsent(name,
+                key -> findOrCreate(key, this.projectService::getProject, creator));
+    }
+
+    /**
+     * Finds or creates the students of a chunk. The students that no sheet found or created yet
+     * are created together by one call of the creator. Students that another sheet is creating at
+     * the same time are completed when the other sheet saved them.
+     * <p>
+     * If the creator fails, the students are created again one by one, so only the students with
+     * an issue fail.
+     *
+     * @param students new students with their names and their saved employment
+     * @param creator  saves copies of new students in one transaction and returns them in the
+     *                 same order. It can be called again for the same students.
+     * @return the found or created students in the order of the new students. Students that
+     * could not be created are completed with their issue.
+     */
+    List<CompletableFuture<Student>> findOrCreateStudents(
+            final List<Student> students, final UnaryOperator<List<Student>> creator) {
+        final Map<StudentKey, CompletableFuture<Student>> index = this.students();
+        final List<CompletableFuture<Student>> found = new ArrayList<>();
+
+        // Students that are created by this call
+        final List<Student> created = new ArrayList<>();
+        final List<StudentKey> claimedKeys = new ArrayList<>();
+        final List<CompletableFuture<Student>> claims = new ArrayList<>();
+
+        for (final Student student : students) {
+            final StudentKey key = StudentKey.of(student);
+            final CompletableFuture<Student> claim = new CompletableFuture<>();
+            final CompletableFuture<Student> existing = index.putIfAbsent(key, claim);
+            if (existing == null) {
+                created.add(student);
+                claimedKeys.add(key);
+                claims.add(claim);
+                found.add(claim);
+            } else {
+                found.add(existing);
+            }
+        }
+
+        if (!created.isEmpty()) {
+            try {
+                final List<Student> saved = creator.apply(created);
+                for (int i = 0; i < claims.size(); i++) {
+                    claims.get(i).complete(saved.get(i));
+                }
+            } catch (final RuntimeException e) {
+                for (int i = 0; i < claims.size(); i++) {
+                    try {
+                        claims.get(i).complete(creator.apply(List.of(created.get(i))).get(0));
+                    } catch (final RuntimeException studentException) {
+
+                        // The next row with this student tries to create it again
+                        index.remove(claimedKeys.get(i), claims.get(i));
+                        claims.get(i).completeExceptionally(studentException);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Loads the allocations that were saved before the import the first time it is called. Only
+     * the IDs and the periods are read, not the associated entities. Must not be called the first
+     * time inside a chunk transaction, so rolled back allocations are never loaded.
+     *
+     * @return keys of the saved allocations
+     */
+    Set<AllocationKey> getSavedAllocations() {
+
+        // Only the first call of all sheets waits for the lock
+        if (this.savedAllocations == null) {
+            synchronized (this) {
+                if (this.savedAllocations == null) {
+                    this.savedAllocations = this.allocationRepository.findAllPeriods().stream()
+                            .map(AllocationKey::of).collect(Collectors.toUnmodifiableSet());
+                }
+            }
+        }
+        return this.savedAllocations;
+    }
+
+    private Map<StudentKey, CompletableFuture<Student>> students() {
+        if (this.students == null) {
+            synchronized (this) {
+                if (this.students == null) {
+                    final Map<StudentKey, CompletableFuture<Student>> students =
+                            new ConcurrentHashMap<>();
+                    this.studentService.getAllStudents().forEach(student -> students.putIfAbsent(
+                            StudentKey.of(student), CompletableFuture.completedFuture(student)));
+                    this.students = students;
+                }
+            }
+        }
+        return this.students;
+    }
+
+    private static <T> T findOrCreate(final String name, final Function<String, Optional<T>> finder,
+                                      final Supplier<T> creator) {
+        return finder.apply(name).orElseGet(() -> {
+            try {
+                return creator.get();
+            } catch (final DataIntegrityViolationException e) {
+
+                // Another import created the same name in the meantime
+                return finder.apply(name).orElseThrow(() -> e);
+            }
+        });
+    }
+
+    /**
+     * Students are identified by their names and the name of their employment
+     */
+    private record StudentKey(String firstName, String lastName, String employmentName) {
+
+        static StudentKey of(final Student student) {
+            return new StudentKey(student.getFirstName(), student.getLastName(),
+                    student.getEmployment().getName());
+        }
+    }
+
+    /**
+     * Allocations are identified by their student, project and period
+     */
+    record AllocationKey(Long studentId, Long projectId, LocalDate begin, LocalDate end) {
+
+        static AllocationKey of(final Allocation allocation) {
+            return new AllocationKey(allocation.getStudent().getId(),
+                    allocation.getProject().getId(), allocation.getPeriod().getBegin(),
+                    allocation.getPeriod().getEnd());
+        }
+
+        static AllocationKey of(final AllocationPeriod allocation) {
+            return new AllocationKey(allocation.studentId(), allocation.projectId(),
+                    allocation.begin(), allocation.end());
+        }
+    }
+}
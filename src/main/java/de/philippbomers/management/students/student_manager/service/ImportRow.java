@@ -0,0 +1,60 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.entity.Student;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * The values of one imported row, waiting to be saved with the other rows of its chunk
+ * <p>
+ * Getters, Setters and the Builder are handled by Lombok
+ */
+@Getter
+@Builder
+class ImportRow {
+
+    private final String firstName;
+    private final String lastName;
+    private final String employmentName;
+    private final LocalDate allocationFrom;
+    private final LocalDate allocationTo;
+    private final String projectName;
+    private final LocalDate projectFrom;
+    private final LocalDate projectTo;
+
+    /**
+     * Issue while reading the row. Rows with an issue are reported, but not saved.
+     */
+    private final String issue;
+
+    /**
+     * Hash of the values, set before the row is saved. It is saved with the allocation of the
+     * row.
+     */
+    @Setter
+    private String hash;
+
+    /**
+     * Employment, project and student of the row. They are shared by all rows of an import and
+     * found or created before the chunk transaction begins.
+     */
+    @Setter
+    private Employment employment;
+
+    @Setter
+    private Project project;
+
+    @Setter
+    private Student student;
+
+    /**
+     * Issue while finding or creating the employment, the project or the student
+     */
+    @Setter
+    private Exception referenceIssue;
+}
@@ -0,0 +1,111 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * Reads the cells of one row. A new reader is used for each row, so nothing has to be reset and
+ * imports running at the same time do not share any state.
+ * <p>
+ * Getters are handled by Lombok
+ */
+@Getter
+class ImportRowReader {
+
+    // Variable initialization to read the fields.
+    // I added more variables than actual needed for possible future feature
+    // upgrades.
+    private LocalDate localDate;
+    private Double doubleValue;
+    private String stringValue;
+    private Boolean booleanValue;
+    private String formulaValue;
+
+    private String firstName, lastName, employmentName, projectName;
+    private LocalDate allocationFrom, allocationTo, projectFrom, projectTo;
+
+    /**
+     * Saves Excel field values to save them into database
+     *
+     * @param currentNumber current order of reading the entities from the table
+     */
+    void addEntities(final int currentNumber) {
+        switch (currentNumber) {
+            case 0 ->
+                // set first name
+                    this.firstName = this.stringValue;
+            case 1 ->
+                // set last name
+                    this.lastName = this.stringValue;
+            case 2 ->
+                // set employment name
+                    this.employmentName = this.stringValue;
+            case 3 ->
+                // set allocation from
+                    this.allocationFrom = this.localDate;
+            case 4 ->
+                // set allocation to
+                    this.allocationTo = this.localDate;
+            case 5 ->
+                // set project name
+                    this.projectName = this.stringValue;
+            case 6 ->
+                // set project from
+                    this.projectFrom = this.localDate;
+            case 7 ->
+                // set project to
+                    this.projectTo = this.localDate;
+        }
+    }
+
+    /**
+     * Converts Excel Fields into Java Objects
+     *
+     * @param cell current
+     */
+    void setCurrentField(final ExcelCell cell) {
+
+        // Reads cell type
+        switch (cell.getCellType()) {
+            case NUMERIC:
+                if (cell.getValue() instanceof LocalDate date) {
+                    // Converts field into Java LocalDate Object
+                    this.localDate = date;
+                } else {
+                    // Converts field into Double
+                    this.doubleValue = (Double) cell.getValue();
+                }
+                break;
+            case STRING:
+                // Converts field into String
+                this.stringValue = (String) cell.getValue();
+                break;
+            case BOOLEAN:
+                // Converts field into Boolean
+                this.booleanValue = (Boolean) cell.getValue();
+                break;
+            case FORMULA:
+                // Converts field into String
+                /*
+                  TODO: Make it possible to evaluate field-formulas, so one can upload a sheet with
+                  formulas
+                 */
+                this.formulaValue = (String) cell.getValue();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param issue while reading the row or null
+     * @return the values of the row to save them with the current chunk
+     */
+    ImportRow toImportRow(final String issue) {
+        return ImportRow.builder().firstName(this.firstName).lastName(this.lastName)
+                .employmentName(this.employmentName).allocationFrom(this.allocationFrom)
+                .allocationTo(this.allocationTo).projectName(this.projectName)
+                .projectFrom(this.projectFrom).projectTo(this.projectTo).issue(issue).build();
+    }
+}
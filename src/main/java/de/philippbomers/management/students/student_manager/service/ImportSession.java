@@ -0,0 +1,168 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.service.ImportRegistry.AllocationKey;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * State of one import: the allocations it created, the rows waiting to be saved and the collected
+ * issues
+ * <p>
+ * Employments, projects and students are found in the registry, which can be shared by several
+ * sessions, together with the allocations that were saved before the import. Allocations are
+ * created in the chunk transaction, so the allocations created by the import belong to one
+ * session. If a transaction is rolled back, only the allocations that it created are removed
+ * again.
+ */
+class ImportSession {
+
+    // Shared employments, projects, students and saved allocations
+    private final ImportRegistry registry;
+
+    // Counts the saved rows and tells if the import was cancelled
+    private final ImportProgress progress;
+
+    // Rows that are read, but not yet saved
+    private final List<ImportRow> pendingRows = new ArrayList<>();
+
+    // Collects the issues of the import for the report
+    private final StringBuilder issues = new StringBuilder();
+
+    // Hashes the values of the rows, so imported rows can be recognized
+    private final MessageDigest rowDigest;
+
+    // Number of rows that were skipped, because they were already imported
+    private long skippedRows;
+
+    // Allocations created by this session
+    private final Set<AllocationKey> allocations = new HashSet<>();
+
+    // Allocations added in the current transaction, removed again if it is rolled back
+    private final List<AllocationKey> uncommittedAllocations = new ArrayList<>();
+
+    ImportSession(final ImportRegistry registry, final ImportProgress progress) {
+        this.registry = registry;
+        this.progress = progress;
+
+        try {
+            this.rowDigest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the values of a row. Rows with the same values have the same hash, no matter if they
+     * were read from an Excel or a CSV file.
+     *
+     * @param row read from the file
+     * @return SHA-256 hash of the values, encoded in Base64
+     */
+    String hashRow(final ImportRow row) {
+        for (final Object value : new Object[]{row.getFirstName(), row.getLastName(),
+                row.getEmploymentName(), row.getAllocationFrom(), row.getAllocationTo(),
+                row.getProjectName(), row.getProjectFrom(), row.getProjectTo()}) {
+            this.rowDigest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+            // Separates the values, so "ab", "c" and "a", "bc" have different hashes
+            this.rowDigest.update((byte) 0);
+        }
+        return Base64.getEncoder().encodeToString(this.rowDigest.digest());
+    }
+
+    /**
+     * @param rows number of rows that were skipped, because they were already imported
+     */
+    void addSkippedRows(final int rows) {
+        this.skippedRows += rows;
+    }
+
+    /**
+     * @return number of rows that were skipped, because they were already imported
+     */
+    long getSkippedRows() {
+        return this.skippedRows;
+    }
+
+    /**
+     * @return the shared employments, projects and students
+     */
+    ImportRegistry getRegistry() {
+        return this.registry;
+    }
+
+    /**
+     * @param student of allocation
+     * @param project of allocation
+     * @param begin   of allocation period
+     * @param end     of allocation period
+     * @return true if the allocation was saved before or created by this session
+     */
+    boolean containsAllocation(final Student student, final Project project,
+                               final LocalDate begin, final LocalDate end) {
+        final AllocationKey key = new AllocationKey(student.getId(), project.getId(), begin, end);
+        return this.allocations.contains(key) || this.registry.getSavedAllocations().contains(key);
+    }
+
+    /**
+     * @param allocation saved allocation
+     * @return the indexed allocation
+     */
+    Allocation addAllocation(final Allocation allocation) {
+        final AllocationKey key = AllocationKey.of(allocation);
+        if (this.allocations.add(key)) {
+            this.uncommittedAllocations.add(key);
+        }
+        return allocation;
+    }
+
+    /**
+     * @return rows that are read, but not yet saved
+     */
+    List<ImportRow> getPendingRows() {
+        return this.pendingRows;
+    }
+
+    /**
+     * @return progress of the import
+     */
+    ImportProgress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * @return the issues of the import
+     */
+    StringBuilder getIssues() {
+        return this.issues;
+    }
+
+    /**
+     * Keeps the allocations that were added in the committed transaction
+     */
+    void commit() {
+        this.uncommittedAllocations.clear();
+    }
+
+    /**
+     * Forgets the allocations that were added in the rolled back transaction, because they do not
+     * exist in the database. The other allocations are kept. The registry is not affected, its
+     * entities are saved in their own transactions.
+     */
+    void rollback() {
+        this.uncommittedAllocations.forEach(this.allocations::remove);
+        this.commit();
+    }
+}
@@ -0,0 +1,210 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Balanced search tree of closed intervals [begin, end], each identified by an ID
+ * <p>
+ * The nodes are ordered by begin and ID and kept balanced like an AVL tree. Each node knows the
+ * largest end of its subtree, so an overlap query can skip every subtree that ends before the
+ * searched interval. Adding and removing takes O(log n), finding the k overlapping intervals takes
+ * O(log n + k).
+ * <p>
+ * The tree is not thread-safe.
+ */
+class IntervalTree {
+
+    private Node root;
+
+    private int size;
+
+    /**
+     * Adds an interval. The same ID must not be added twice with the same begin.
+     *
+     * @param id    of interval
+     * @param begin of interval
+     * @param end   of interval, not before begin
+     */
+    void add(final long id, final long begin, final long end) {
+        this.root = this.insert(this.root, new Node(id, begin, end));
+    }
+
+    /**
+     * @param id    of interval
+     * @param begin of interval, as it was added
+     */
+    void remove(final long id, final long begin) {
+        this.root = this.delete(this.root, id, begin);
+    }
+
+    /**
+     * Finds all intervals that have at least one point in common with [from, to]
+     *
+     * @param from     of searched interval
+     * @param to       of searched interval
+     * @param consumer receives the IDs of the overlapping intervals, ordered by begin
+     */
+    void findOverlaps(final long from, final long to, final LongConsumer consumer) {
+        findOverlaps(this.root, from, to, consumer);
+    }
+
+    /**
+     * @return number of intervals
+     */
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private static void findOverlaps(final Node node, final long from, final long to,
+                                     final LongConsumer consumer) {
+
+        // No interval of this subtree ends inside or after the searched interval
+        if (node == null || node.maxEnd < from) {
+            return;
+        }
+        findOverlaps(node.left, from, to, consumer);
+
+        // Nodes on the right begin even later
+        if (node.begin > to) {
+            return;
+        }
+        if (node.end >= from) {
+            consumer.accept(node.id);
+        }
+        findOverlaps(node.right, from, to, consumer);
+    }
+
+    private Node insert(final Node node, final Node added) {
+        if (node == null) {
+            this.size++;
+            return added;
+        }
+        final int comparison = compare(added.begin, added.id, node);
+        if (comparison < 0) {
+            node.left = this.insert(node.left, added);
+        } else if (comparison > 0) {
+            node.right = this.insert(node.right, added);
+        } else {
+
+            // Same interval again, only the end can differ
+            node.end = added.end;
+        }
+        return balance(node);
+    }
+
+    private Node delete(final Node node, final long id, final long begin) {
+        if (node == null) {
+            return null;
+        }
+        final int comparison = compare(begin, id, node);
+        if (comparison < 0) {
+            node.left = this.delete(node.left, id, begin);
+        } else if (comparison > 0) {
+            node.right = this.delete(node.right, id, begin);
+        } else {
+            this.size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+
+            // Replaces the node by the first node of its right subtree
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeFirst(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private static Node removeFirst(final Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeFirst(node.left);
+        return balance(node);
+    }
+
+    private static int compare(final long begin, final long id, final Node node) {
+        final int comparison = Long.compare(begin, node.begin);
+        return comparison != 0 ? comparison : Long.compare(id, node.id);
+    }
+
+    private static Node balance(final Node node) {
+        update(node);
+        final int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(final Node node) {
+        final Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(final Node node) {
+        final Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static void update(final Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.maxEnd = Math.max(node.end, Math.max(maxEnd(node.left), maxEnd(node.right)));
+    }
+
+    private static int height(final Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static long maxEnd(final Node node) {
+        return node == null ? Long.MIN_VALUE : node.maxEnd;
+    }
+
+    private static class Node {
+
+        private final long id;
+        private final long begin;
+        private long end;
+
+        // Largest end of the subtree
+        private long maxEnd;
+        private int height = 1;
+        private Node left;
+        private Node right;
+
+        Node(final long id, final long begin, final long end) {
+            this.id = id;
+            this.begin = begin;
+            this.end = end;
+            this.maxEnd = end;
+        }
+    }
+}
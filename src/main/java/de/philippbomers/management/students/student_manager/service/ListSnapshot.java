@@ -0,0 +1,11 @@
+package de.philippbomers.management.students.student_manager.service;
+
+/**
+ * All entities of a table, already serialized to be sent
+ *
+ * @param json  JSON array with the entities, shared by all readers and must not be changed
+ * @param etag  entity tag of the versions the JSON was built for, including the quotes
+ * @param count number of entities
+ */
+public record ListSnapshot(byte[] json, String etag, int count) {
+}
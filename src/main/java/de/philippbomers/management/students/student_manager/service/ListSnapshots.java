@@ -0,0 +1,39 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.repository.EmploymentRepository;
+import de.philippbomers.management.students.student_manager.repository.ProjectRepository;
+import de.philippbomers.management.students.student_manager.repository.StudentRepository;
+import org.springframework.stereotype.Component;
+
+/**
+ * Snapshots of the lists of students, projects and employments
+ * <p>
+ * A snapshot is built again when the versions of its tables changed. Students include their
+ * employment and projects include their period, so edits of those replace the snapshot as well.
+ */
+@Component
+class ListSnapshots {
+
+    final SnapshotCache<Student> students;
+
+    final SnapshotCache<Project> projects;
+
+    final SnapshotCache<Employment> employments;
+
+    ListSnapshots(final StudentRepository studentRepository,
+                  final ProjectRepository projectRepository,
+                  final EmploymentRepository employmentRepository,
+                  final EntityVersions entityVersions,
+                  final ObjectMapper objectMapper) {
+        this.students = new SnapshotCache<>(entityVersions::students, studentRepository::findAll,
+                objectMapper.writer());
+        this.projects = new SnapshotCache<>(entityVersions::projects, projectRepository::findAll,
+                objectMapper.writer());
+        this.employments = new SnapshotCache<>(entityVersions::employments,
+                employmentRepository::findAll, objectMapper.writer());
+    }
+}
@@ -0,0 +1,122 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Students that are allocated on each day
+ * <p>
+ * The days are split into segments, in which the same students are allocated. Each segment
+ * starts at an epoch day and has a bitset with one bit per student. Students get a dense number
+ * when they are allocated for the first time, so the bitsets stay small although the IDs come
+ * from a sequence. Segments only begin where an allocation begins or ends, so the index grows
+ * with the number of allocations and not with the length of their periods. The students that are
+ * allocated in a period are the union of the bitsets of its segments, so a search does not
+ * depend on the number of allocations.
+ * <p>
+ * The index is not thread-safe.
+ */
+class OccupancyIndex {
+
+    // Students of each segment, until the next segment begins. Days before the first segment have
+    // no students.
+    private final NavigableMap<Long, BitSet> segments = new TreeMap<>();
+
+    private final Map<Long, Integer> studentNumbers = new HashMap<>();
+
+    // Student ID of each number
+    private final List<Long> studentIds = new ArrayList<>();
+
+    /**
+     * Marks a student as allocated on each day of a period
+     *
+     * @param studentId ID of student
+     * @param begin     first epoch day
+     * @param end       last epoch day
+     */
+    void occupy(final Long studentId, final long begin, final long end) {
+        final int number = this.studentNumbers.computeIfAbsent(studentId, key -> {
+            this.studentIds.add(key);
+            return this.studentIds.size() - 1;
+        });
+        this.split(begin);
+        this.split(end + 1);
+        this.segments.subMap(begin, end + 1).values().forEach(students -> students.set(number));
+        this.merge(begin, end + 1);
+    }
+
+    /**
+     * Marks a student as free on each day of a period. Other allocations of the student in the
+     * period have to be occupied again.
+     *
+     * @param studentId ID of student
+     * @param begin     first epoch day
+     * @param end       last epoch day
+     */
+    void release(final Long studentId, final long begin, final long end) {
+        final Integer number = this.studentNumbers.get(studentId);
+        if (number == null) {
+            return;
+        }
+        this.split(begin);
+        this.split(end + 1);
+        this.segments.subMap(begin, end + 1).values().forEach(students -> students.clear(number));
+        this.merge(begin, end + 1);
+    }
+
+    /**
+     * @param from first epoch day
+     * @param to   last epoch day
+     * @return IDs of the students that are allocated on at least one day of the period
+     */
+    Set<Long> findOccupied(final long from, final long to) {
+        final BitSet occupied = new BitSet(this.studentIds.size());
+
+        // The segment that contains the first day can begin before it
+        final Map.Entry<Long, BitSet> first = this.segments.floorEntry(from);
+        if (first != null) {
+            occupied.or(first.getValue());
+        }
+        this.segments.subMap(from, false, to, true).values().forEach(occupied::or);
+        final Set<Long> students = new HashSet<>();
+        occupied.stream().forEach(number -> students.add(this.studentIds.get(number)));
+        return students;
+    }
+
+    /**
+     * Begins a segment at the day, with the students of the segment that contains it
+     */
+    private void split(final long day) {
+        if (!this.segments.containsKey(day)) {
+            final Map.Entry<Long, BitSet> before = this.segments.lowerEntry(day);
+            this.segments.put(day,
+                    before == null ? new BitSet() : (BitSet) before.getValue().clone());
+        }
+    }
+
+    /**
+     * Removes the segments between two days that have the same students as the segment before
+     */
+    private void merge(final long first, final long last) {
+        final Map.Entry<Long, BitSet> before = this.segments.lowerEntry(first);
+        BitSet previous = before == null ? new BitSet() : before.getValue();
+        final Iterator<BitSet> students =
+                this.segments.subMap(first, true, last, true).values().iterator();
+        while (students.hasNext()) {
+            final BitSet current = students.next();
+            if (current.equals(previous)) {
+                students.remove();
+            } else {
+                previous = current;
+            }
+        }
+    }
+}
@@ -4,10 +4,12 @@ import de.philippbomers.management.students.student_manager.entity.Period;
 import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
 import de.philippbomers.management.students.student_manager.repository.PeriodRepository;
 import de.philippbomers.management.students.student_manager.repository.ProjectRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * The service class provides a connection between the Controller and Repository and can include
@@ -24,10 +26,19 @@ public class PeriodService {
 
     private final AllocationRepository allocationRepository;
 
-    public PeriodService(PeriodRepository periodRepository, ProjectRepository projectRepository, AllocationRepository allocationRepository) {
+    private final AllocationIndex allocationIndex;
+
+    private final ProjectService projectService;
+
+    private final EntityVersions entityVersions;
+
+    public PeriodService(PeriodRepository periodRepository, ProjectRepository projectRepository, AllocationRepository allocationRepository, AllocationIndex allocationIndex, ProjectService projectService, EntityVersions entityVersions) {
         this.periodRepository = periodRepository;
         this.projectRepository = projectRepository;
         this.allocationRepository = allocationRepository;
+        this.allocationIndex = allocationIndex;
+        this.projectService = projectService;
+        this.entityVersions = entityVersions;
     }
 
     /**
@@ -37,6 +48,40 @@ public class PeriodService {
         return this.periodRepository.findAll();
     }
 
+    /**
+     * @param after ID of the last period of the previous page, 0 for the first page
+     * @param limit maximum number of periods
+     * @return List with the next periods ordered by ID
+     */
+    public List<Period> getPeriods(final long after, final int limit) {
+        return this.periodRepository.findPage(after, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Reads all periods with a database cursor. Must be used inside a transaction and the stream
+     * must be closed.
+     *
+     * @return Stream with all periods ordered by ID
+     */
+    public Stream<Period> streamAllPeriods() {
+        return this.periodRepository.streamAll();
+    }
+
+    /**
+     * @return entity tag of all periods, which changes with each write
+     */
+    public String getPeriodsTag() {
+        return this.entityVersions.periods();
+    }
+
+    /**
+     * @param id of period
+     * @return entity tag of the period, which changes with each write of it
+     */
+    public String getPeriodTag(final Long id) {
+        return this.entityVersions.period(id);
+    }
+
     /**
      * @param id of period
      * @return Optional<Period>
@@ -57,7 +102,48 @@ public class PeriodService {
             return null;
         }
 
-        return this.periodRepository.save(period);
+        // Unchanged periods are not merged again, so their allocations and projects stay valid
+        final Period current = period.getId() == null ? null
+                : this.periodRepository.findById(period.getId()).orElse(null);
+        if (current != null && isUnchanged(current, period)) {
+            return current;
+        }
+
+        final boolean edited = period.getId() != null;
+        final Period saved = this.periodRepository.save(period);
+        this.entityVersions.periods.increment(saved.getId());
+
+        // Allocations that use the period have a new period now. The index is only updated when
+        // the transaction is committed, so a rolled back edit does not change it.
+        this.allocationIndex.updatePeriod(saved.getId(), saved.getBegin(), saved.getEnd());
+        if (edited) {
+            this.projectService.invalidatePeriod(saved.getId());
+        }
+        return saved;
+    }
+
+    /**
+     * Edits a saved period with a single conditional update
+     *
+     * @param period edited period with the version it was read with
+     * @return Optional with the edited period, empty if the period is invalid, does not exist or
+     * was edited since
+     */
+    public Optional<Period> editPeriod(final Period period) {
+
+        // Begin must be smaller than end
+        if (!period.getBegin().isBefore(period.getEnd())
+                || this.periodRepository.updateIfCurrent(period.getId(), period.getVersion(),
+                period.getBegin(), period.getEnd()) == 0) {
+            return Optional.empty();
+        }
+        period.setVersion(period.getVersion() + 1);
+        this.entityVersions.periods.increment(period.getId());
+
+        // Allocations and projects that use the period have a new period now
+        this.allocationIndex.updatePeriod(period.getId(), period.getBegin(), period.getEnd());
+        this.projectService.invalidatePeriod(period.getId());
+        return Optional.of(period);
     }
 
     /**
@@ -73,15 +159,20 @@ public class PeriodService {
             // Checks if it is not connected with any project.
             // If there is a hit, return null to give the information that the period is not
             // deletable
-            if (this.projectRepository.findAll().stream()
-                    .anyMatch(project -> project.getPeriod().equals(period.get()))
-                    || this.allocationRepository.findAll().stream()
-                    .anyMatch(alloc -> alloc.getPeriod().equals(period.get()))) {
+            if (this.projectRepository.existsByPeriodId(id)
+                    || this.allocationRepository.existsByPeriodId(id)) {
                 return Optional.empty();
             }
 
             this.periodRepository.deleteById(id);
+            this.entityVersions.periods.increment(id);
         }
         return period;
     }
+
+    private static boolean isUnchanged(final Period saved, final Period period) {
+        return saved.getVersion() == period.getVersion()
+                && saved.getBegin().equals(period.getBegin())
+                && saved.getEnd().equals(period.getEnd());
+    }
 }
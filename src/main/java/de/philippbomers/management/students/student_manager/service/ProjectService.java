@@ -1,13 +1,24 @@
 package de.philippbomers.management.students.student_manager.service;
 
+import de.philippbomers.management.students.student_manager.config.ReferenceCacheProperties;
+import de.philippbomers.management.students.student_manager.entity.Period;
 import de.philippbomers.management.students.student_manager.entity.Project;
 import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
 import de.philippbomers.management.students.student_manager.repository.PeriodRepository;
 import de.philippbomers.management.students.student_manager.repository.ProjectRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * The service class provides a connection between the Controller and Repository and can include
@@ -24,10 +35,27 @@ public class ProjectService {
 
     private final AllocationRepository allocationRepository;
 
-    public ProjectService(ProjectRepository projectRepository, PeriodRepository periodRepository, AllocationRepository allocationRepository) {
+    private final AllocationIndex allocationIndex;
+
+    private final Validator validator;
+
+    // Projects are read for most writes, but change rarely
+    private final ReferenceCache<Project> cache;
+
+    private final ListSnapshots listSnapshots;
+
+    private final EntityVersions entityVersions;
+
+    public ProjectService(ProjectRepository projectRepository, PeriodRepository periodRepository, AllocationRepository allocationRepository, AllocationIndex allocationIndex, Validator validator, ReferenceCacheProperties referenceCacheProperties, ListSnapshots listSnapshots, EntityVersions entityVersions) {
         this.projectRepository = projectRepository;
         this.periodRepository = periodRepository;
         this.allocationRepository = allocationRepository;
+        this.allocationIndex = allocationIndex;
+        this.validator = validator;
+        this.listSnapshots = listSnapshots;
+        this.entityVersions = entityVersions;
+        this.cache = new ReferenceCache<>(referenceCacheProperties, Project::getId,
+                Project::getName);
     }
 
     /**
@@ -35,16 +63,95 @@ public class ProjectService {
      * @return the saved project
      */
     public Project setProject(final Project project) {
-        project.setPeriod(this.periodRepository.save(project.getPeriod()));
-        return this.projectRepository.save(project);
+        project.setPeriod(this.savePeriod(project.getPeriod()));
+        final Project saved = this.projectRepository.save(project);
+        this.invalidate(saved.getId());
+        return saved;
+    }
+
+    /**
+     * Edits a saved project with a single conditional update. A new period is saved first, a
+     * saved period is only referenced and is edited with its own endpoint. The new period is
+     * rolled back if the edit fails. The edited project is returned with its saved period.
+     *
+     * @param project edited project with the version it was read with
+     * @return Optional with the edited project, empty if it or its period does not exist or if it
+     * was edited since
+     * @throws ConstraintViolationException if the project is invalid
+     */
+    @Transactional
+    public Optional<Project> editProject(final Project project) {
+        final Set<ConstraintViolation<Project>> violations = this.validator.validate(project);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        if (project.getPeriod().getId() == null) {
+            project.setPeriod(this.savePeriod(project.getPeriod()));
+        } else {
+            final Optional<Period> period =
+                    this.periodRepository.findById(project.getPeriod().getId());
+            if (period.isEmpty()) {
+                return Optional.empty();
+            }
+            project.setPeriod(period.get());
+        }
+        if (this.projectRepository.updateIfCurrent(project.getId(), project.getVersion(),
+                project.getName(), project.getPeriod()) == 0) {
+
+            // Also rolls back the entities that were saved for the edit
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return Optional.empty();
+        }
+        this.invalidate(project.getId());
+        project.setVersion(project.getVersion() + 1);
+        return Optional.of(project);
+    }
+
+    /**
+     * Reports the allocations of a project per day, week or month. The report is read from the
+     * maintained timeline of the project, so it does not depend on the number of allocations.
+     *
+     * @param id     of project
+     * @param from   first day of the report
+     * @param to     last day of the report
+     * @param bucket length of the periods of the report
+     * @return List with the utilization of each period
+     */
+    public List<Utilization> getUtilization(final Long id, final LocalDate from, final LocalDate to,
+                                            final UtilizationBucket bucket) {
+        return this.allocationIndex.getProjectUtilization(id, from, to, bucket);
     }
 
     /**
      * @param id project ID
-     * @return Optional<Project>
+     * @return Optional<Project> from the cache, which must not be changed
      */
     public Optional<Project> getProject(final Long id) {
-        return this.projectRepository.findById(id);
+        return this.cache.get(id, this.projectRepository::findById);
+    }
+
+    /**
+     * @param name of project
+     * @return Optional<Project> from the cache, which must not be changed
+     */
+    public Optional<Project> getProject(final String name) {
+        return this.cache.get(name, this.projectRepository::findByName);
+    }
+
+    /**
+     * @return hits, misses and evictions of the project cache
+     */
+    public CacheStatistics getCacheStatistics() {
+        return this.cache.getStatistics();
+    }
+
+    /**
+     * Invalidates the cached project after its period was edited
+     *
+     * @param periodId ID of period
+     */
+    void invalidatePeriod(final Long periodId) {
+        this.cache.invalidateIf(project -> periodId.equals(project.getPeriod().getId()));
     }
 
     /**
@@ -54,6 +161,49 @@ public class ProjectService {
         return this.projectRepository.findAll();
     }
 
+    /**
+     * Reads all projects from the snapshot, which is only built again after a write
+     *
+     * @return ListSnapshot with all projects as JSON
+     */
+    public ListSnapshot getProjectSnapshot() {
+        return this.listSnapshots.projects.get();
+    }
+
+    /**
+     * @return entity tag of all projects, which changes with each write
+     */
+    public String getProjectsTag() {
+        return this.entityVersions.projects();
+    }
+
+    /**
+     * @param id of project
+     * @return entity tag of the project, which changes with each write of it
+     */
+    public String getProjectTag(final Long id) {
+        return this.entityVersions.project(id);
+    }
+
+    /**
+     * @param after ID of the last project of the previous page, 0 for the first page
+     * @param limit maximum number of projects
+     * @return List with the next projects ordered by ID
+     */
+    public List<Project> getProjects(final long after, final int limit) {
+        return this.projectRepository.findPage(after, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Reads all projects with a database cursor. Must be used inside a transaction and the stream
+     * must be closed.
+     *
+     * @return Stream with all projects ordered by ID
+     */
+    public Stream<Project> streamAllProjects() {
+        return this.projectRepository.streamAll();
+    }
+
     /**
      * Deletes a project by ID and returns the deleted project
      *
@@ -65,12 +215,26 @@ public class ProjectService {
         project.ifPresent(value -> {
 
             // Deletes all allocations for that project
-            this.allocationRepository.findAll().stream()
-                    .filter(alloc -> alloc.getProject().equals(value))
-                    .forEach(alloc -> allocationRepository.deleteById(alloc.getId()));
+            this.allocationRepository.deleteByProjectId(id);
+            this.allocationIndex.removeProject(id);
 
             this.projectRepository.deleteById(id);
+            this.invalidate(id);
+
+            // The period of the project is deleted with it
+            this.entityVersions.periods.increment(value.getPeriod().getId());
         });
         return project;
     }
+
+    private Period savePeriod(final Period period) {
+        final Period saved = this.periodRepository.save(period);
+        this.entityVersions.periods.increment(saved.getId());
+        return saved;
+    }
+
+    private void invalidate(final Long id) {
+        this.cache.invalidate(id);
+        this.entityVersions.projects.increment(id);
+    }
 }
@@ -0,0 +1,137 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.philippbomers.management.students.student_manager.config.ReferenceCacheProperties;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded read-through cache for reference data that is looked up by ID and by name
+ * <p>
+ * Entities are cached by their ID, names only point to the ID. An edited or deleted entity is
+ * therefore invalidated by its ID alone: a name whose entity is not cached anymore or has another
+ * name now is loaded again. Missing entities are not cached, so a new entity is found as soon as
+ * it is saved. Cached entities are shared by all callers and must not be changed.
+ *
+ * @param <T> type of the cached entities
+ */
+class ReferenceCache<T> {
+
+    private final Cache<Long, T> entities;
+
+    private final Cache<String, Long> ids;
+
+    private final Function<T, Long> idOf;
+
+    private final Function<T, String> nameOf;
+
+    // Increased by each invalidation, so an entity that was loaded meanwhile is not kept
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    ReferenceCache(final ReferenceCacheProperties properties, final Function<T, Long> idOf,
+                   final Function<T, String> nameOf) {
+        this.entities = Caffeine.newBuilder().maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite()).recordStats().build();
+        this.ids = Caffeine.newBuilder().maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite()).build();
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+    }
+
+    /**
+     * @param id     of entity
+     * @param loader reads the entity from the database
+     * @return Optional with the cached or loaded entity
+     */
+    Optional<T> get(final Long id, final Function<Long, Optional<T>> loader) {
+        final T cached = this.entities.getIfPresent(id);
+        if (cached != null) {
+            this.hits.increment();
+            return Optional.of(cached);
+        }
+        return this.load(id, loader);
+    }
+
+    /**
+     * @param name   of entity
+     * @param loader reads the entity from the database
+     * @return Optional with the cached or loaded entity
+     */
+    Optional<T> get(final String name, final Function<String, Optional<T>> loader) {
+        final Long id = this.ids.getIfPresent(name);
+        final T cached = id == null ? null : this.entities.getIfPresent(id);
+        if (cached != null && name.equals(this.nameOf.apply(cached))) {
+            this.hits.increment();
+            return Optional.of(cached);
+        }
+        return this.load(name, loader);
+    }
+
+    /**
+     * Removes an edited or deleted entity now and again when the current transaction is
+     * completed, because until then the entity can be loaded with its old or its rolled back
+     * state
+     *
+     * @param id of entity
+     */
+    void invalidate(final Long id) {
+        this.remove(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(final int status) {
+                    ReferenceCache.this.remove(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * Invalidates all cached entities that match, for example because an entity they contain
+     * was edited
+     *
+     * @param filter matches the entities to invalidate
+     */
+    void invalidateIf(final Predicate<T> filter) {
+        this.entities.asMap().values().stream().filter(filter).map(this.idOf).toList()
+                .forEach(this::invalidate);
+    }
+
+    CacheStatistics getStatistics() {
+        return new CacheStatistics(this.entities.estimatedSize(), this.hits.sum(),
+                this.misses.sum(), this.entities.stats().evictionCount());
+    }
+
+    private void remove(final Long id) {
+        this.invalidations.incrementAndGet();
+        this.entities.invalidate(id);
+    }
+
+    private <K> Optional<T> load(final K key, final Function<K, Optional<T>> loader) {
+        this.misses.increment();
+        final long invalidations = this.invalidations.get();
+        final Optional<T> entity = loader.apply(key);
+        entity.ifPresent(value -> {
+            final Long id = this.idOf.apply(value);
+            this.entities.put(id, value);
+            this.ids.put(this.nameOf.apply(value), id);
+
+            // The entity was loaded before an invalidation, so it can be outdated
+            if (this.invalidations.get() != invalidations) {
+                this.entities.invalidate(id);
+            }
+        });
+        return entity;
+    }
+}
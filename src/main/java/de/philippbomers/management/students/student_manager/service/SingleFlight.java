@@ -0,0 +1,75 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical reads into one
+ * <p>
+ * The first caller of a key runs the read, callers with the same key that arrive until it is
+ * finished wait for it and get the same result or exception. A finished read is not kept, the next
+ * caller runs it again. The key must therefore contain everything the result depends on, for
+ * example the versions of the read tables, so no caller gets a result that was read before a
+ * write it already saw. Results are shared by all callers and must not be changed.
+ *
+ * @param <V> type of the results
+ */
+class SingleFlight<V> {
+
+    private final ConcurrentMap<String, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param key    identifies the read and the state it reads
+     * @param loader runs the read
+     * @return the result of the own or of the running read
+     */
+    V get(final String key, final Supplier<V> loader) {
+        this.requests.increment();
+        final CompletableFuture<V> flight = new CompletableFuture<>();
+        final CompletableFuture<V> running = this.flights.putIfAbsent(key, flight);
+        if (running != null) {
+            this.coalesced.increment();
+            return join(running);
+        }
+        try {
+            final V result = loader.get();
+            flight.complete(result);
+            return result;
+        } catch (final RuntimeException | Error e) {
+
+            // Waiting callers must not wait forever
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.flights.remove(key, flight);
+        }
+    }
+
+    CoalescingStatistics getStatistics() {
+        final long requests = this.requests.sum();
+        final long coalesced = this.coalesced.sum();
+        return new CoalescingStatistics(requests, requests - coalesced, coalesced);
+    }
+
+    private static <V> V join(final CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Copy-on-write snapshot of a whole table
+ * <p>
+ * Readers get the current snapshot without a lock, query or serialization. Each snapshot keeps
+ * the entity tag of the versions it was built for. A write changes the versions, so the next
+ * reader builds a new snapshot. Only one reader builds it, the others wait for it. The tag is read
+ * before the entities, so a snapshot is never older than its tag.
+ *
+ * @param <T> type of the entities
+ */
+class SnapshotCache<T> {
+
+    private final AtomicReference<ListSnapshot> snapshot = new AtomicReference<>();
+
+    private final Object build = new Object();
+
+    private final Supplier<String> etag;
+
+    private final Supplier<List<T>> loader;
+
+    private final ObjectWriter objectWriter;
+
+    SnapshotCache(final Supplier<String> etag, final Supplier<List<T>> loader,
+                  final ObjectWriter objectWriter) {
+        this.etag = etag;
+        this.loader = loader;
+        this.objectWriter = objectWriter;
+    }
+
+    /**
+     * @return the current snapshot, built from the database if the table was written since
+     */
+    ListSnapshot get() {
+        final ListSnapshot current = this.snapshot.get();
+        if (current != null && current.etag().equals(this.etag.get())) {
+            return current;
+        }
+        synchronized (this.build) {
+            final String etag = this.etag.get();
+            final ListSnapshot built = this.snapshot.get();
+            if (built != null && built.etag().equals(etag)) {
+                return built;
+            }
+            final ListSnapshot created = this.create(etag, this.loader.get());
+            this.snapshot.set(created);
+            return created;
+        }
+    }
+
+    private ListSnapshot create(final String etag, final List<T> entities) {
+        try {
+            return new ListSnapshot(this.objectWriter.writeValueAsBytes(entities), etag,
+                    entities.size());
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Could not create the snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelNumberFormat;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * SAX handler for a single worksheet of an .xlsx file
+ * <p>
+ * Only the cells of the current row are kept in memory. As soon as a row ends, it is handed to the
+ * row consumer and forgotten, so the memory usage does not depend on the size of the sheet.
+ *
+ * <a href="https://poi.apache.org/components/spreadsheet/how-to.html#xssf_sax_api">Based on the
+ * XSSF and SAX event API of Apache POI (5.2.2).</a>
+ */
+class StreamingSheetHandler extends DefaultHandler {
+
+    private final SharedStrings sharedStrings;
+
+    private final StylesTable stylesTable;
+
+    private final boolean date1904;
+
+    // Receives the row number and the cells of each finished row
+    private final BiConsumer<Integer, List<ExcelCell>> rowConsumer;
+
+    // Cells of the current row
+    private final List<ExcelCell> rowCells = new ArrayList<>();
+
+    // Text content of the current <v>, <f> or inline <t> element
+    private final StringBuilder text = new StringBuilder();
+
+    private int rowIndex = -1;
+    private int columnIndex = -1;
+
+    // State of the current cell
+    private String cellType;
+    private int styleIndex;
+    private String value;
+    private String formula;
+    private String inlineString;
+    private boolean readingText;
+    private boolean insideInlineString;
+
+    StreamingSheetHandler(final SharedStrings sharedStrings, final StylesTable stylesTable,
+                          final boolean date1904,
+                          final BiConsumer<Integer, List<ExcelCell>> rowConsumer) {
+        this.sharedStrings = sharedStrings;
+        this.stylesTable = stylesTable;
+        this.date1904 = date1904;
+        this.rowConsumer = rowConsumer;
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName,
+                             final Attributes attributes) {
+        switch (localName) {
+            case "row" -> {
+                // Rows without a number follow the previous row
+                final String reference = attributes.getValue("r");
+                this.rowIndex = reference == null ? this.rowIndex + 1 : Integer.parseInt(reference) - 1;
+                this.columnIndex = -1;
+                this.rowCells.clear();
+            }
+            case "c" -> {
+                // Cells without a reference follow the previous cell
+                final String reference = attributes.getValue("r");
+                this.columnIndex = reference == null ? this.columnIndex + 1
+                        : new CellReference(reference).getCol();
+
+                final String style = attributes.getValue("s");
+                this.styleIndex = style == null ? 0 : Integer.parseInt(style);
+                this.cellType = attributes.getValue("t");
+                this.value = null;
+                this.formula = null;
+                this.inlineString = null;
+            }
+            case "v", "f" -> this.startText();
+            case "is" -> {
+                this.insideInlineString = true;
+                this.inlineString = "";
+            }
+            case "t" -> {
+                if (this.insideInlineString) {
+                    this.startText();
+                }
+            }
+            default -> {
+                // Other elements are not needed for the import
+            }
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) {
+        switch (localName) {
+            case "v" -> this.value = this.endText();
+            case "f" -> this.formula = this.endText();
+            case "t" -> {
+                if (this.insideInlineString) {
+                    this.inlineString += this.endText();
+                }
+            }
+            case "is" -> this.insideInlineString = false;
+            case "c" -> this.rowCells.add(new SheetCell(this.rowIndex, this.columnIndex,
+                    this.cellType, this.styleIndex, this.value, this.formula, this.inlineString));
+            case "row" -> {
+                this.rowConsumer.accept(this.rowIndex, this.rowCells);
+                this.rowCells.clear();
+            }
+            default -> {
+                // Other elements are not needed for the import
+            }
+        }
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        if (this.readingText) {
+            this.text.append(ch, start, length);
+        }
+    }
+
+    private void startText() {
+        this.readingText = true;
+        this.text.setLength(0);
+    }
+
+    private String endText() {
+        this.readingText = false;
+        return this.text.toString();
+    }
+
+    /**
+     * A cell read by the SAX parser. The raw XML values are converted on demand.
+     */
+    private class SheetCell implements ExcelCell {
+
+        private final int rowIndex;
+        private final int columnIndex;
+        private final String type;
+        private final int styleIndex;
+        private final String value;
+        private final String formula;
+        private final String inlineString;
+
+        SheetCell(final int rowIndex, final int columnIndex, final String type,
+                  final int styleIndex, final String value, final String formula,
+                  final String inlineString) {
+            this.rowIndex = rowIndex;
+            this.columnIndex = columnIndex;
+            this.type = type;
+            this.styleIndex = styleIndex;
+            this.value = value;
+            this.formula = formula;
+            this.inlineString = inlineString;
+        }
+
+        @Override
+        public int getRowIndex() {
+            return this.rowIndex;
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return this.columnIndex;
+        }
+
+        /**
+         * Mirrors the cell type that XSSFCell reports for the same XML
+         */
+        @Override
+        public CellType getCellType() {
+            if (this.formula != null) {
+                return CellType.FORMULA;
+            }
+            if (this.type == null || this.type.equals("n")) {
+                return this.value == null ? CellType.BLANK : CellType.NUMERIC;
+            }
+            return switch (this.type) {
+                case "s", "str", "inlineStr" -> CellType.STRING;
+                case "b" -> CellType.BOOLEAN;
+                case "e" -> CellType.ERROR;
+                default -> CellType._NONE;
+            };
+        }
+
+        @Override
+        public Object getValue() {
+            return switch (this.getCellType()) {
+                case FORMULA -> this.formula;
+                case NUMERIC -> this.getNumericValue();
+                case STRING -> this.getStringValue();
+                case BOOLEAN -> "1".equals(this.value);
+                default -> null;
+            };
+        }
+
+        private Object getNumericValue() {
+            final double number = Double.parseDouble(this.value);
+
+            // Same check as DateUtil.isCellDateFormatted(cell) of the workbook engine
+            if (stylesTable != null && DateUtil.isValidExcelDate(number)) {
+                final ExcelNumberFormat numberFormat =
+                        ExcelNumberFormat.from(stylesTable.getStyleAt(this.styleIndex));
+                if (numberFormat != null && DateUtil.isADateFormat(numberFormat)) {
+                    return ExcelCell.toLocalDate(DateUtil.getJavaDate(number, date1904));
+                }
+            }
+            return number;
+        }
+
+        private String getStringValue() {
+            return switch (this.type) {
+                case "s" -> sharedStrings.getItemAt(Integer.parseInt(this.value)).getString();
+                case "inlineStr" -> this.inlineString;
+                default -> this.value;
+            };
+        }
+    }
+}
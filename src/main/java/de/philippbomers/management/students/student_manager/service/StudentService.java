@@ -1,13 +1,24 @@
 package de.philippbomers.management.students.student_manager.service;
 
+import de.philippbomers.management.students.student_manager.entity.Employment;
 import de.philippbomers.management.students.student_manager.entity.Student;
 import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
-import de.philippbomers.management.students.student_manager.repository.EmploymentRepository;
 import de.philippbomers.management.students.student_manager.repository.StudentRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.time.LocalDate;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * The service class provides a connection between the Controller and Repository and can include
@@ -20,14 +31,26 @@ public class StudentService {
 
     private final StudentRepository studentRepository;
 
-    private final EmploymentRepository employmentRepository;
+    private final EmploymentService employmentService;
 
     private final AllocationRepository allocationRepository;
 
-    public StudentService(StudentRepository studentRepository, EmploymentRepository employmentRepository, AllocationRepository allocationRepository) {
+    private final AllocationIndex allocationIndex;
+
+    private final Validator validator;
+
+    private final ListSnapshots listSnapshots;
+
+    private final EntityVersions entityVersions;
+
+    public StudentService(StudentRepository studentRepository, EmploymentService employmentService, AllocationRepository allocationRepository, AllocationIndex allocationIndex, Validator validator, ListSnapshots listSnapshots, EntityVersions entityVersions) {
         this.studentRepository = studentRepository;
-        this.employmentRepository = employmentRepository;
+        this.employmentService = employmentService;
         this.allocationRepository = allocationRepository;
+        this.allocationIndex = allocationIndex;
+        this.validator = validator;
+        this.listSnapshots = listSnapshots;
+        this.entityVersions = entityVersions;
     }
 
     /**
@@ -37,6 +60,82 @@ public class StudentService {
         return this.studentRepository.findAll();
     }
 
+    /**
+     * Reads all students from the snapshot, which is only built again after a write
+     *
+     * @return ListSnapshot with all students as JSON
+     */
+    public ListSnapshot getStudentSnapshot() {
+        return this.listSnapshots.students.get();
+    }
+
+    /**
+     * @return entity tag of all students, which changes with each write
+     */
+    public String getStudentsTag() {
+        return this.entityVersions.students();
+    }
+
+    /**
+     * @param id of student
+     * @return entity tag of the student, which changes with each write of it
+     */
+    public String getStudentTag(final Long id) {
+        return this.entityVersions.student(id);
+    }
+
+    /**
+     * @param after ID of the last student of the previous page, 0 for the first page
+     * @param limit maximum number of students
+     * @return List with the next students ordered by ID
+     */
+    public List<Student> getStudents(final long after, final int limit) {
+        return this.studentRepository.findPage(after, PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Reads all students with a database cursor. Must be used inside a transaction and the stream
+     * must be closed.
+     *
+     * @return Stream with all students ordered by ID
+     */
+    public Stream<Student> streamAllStudents() {
+        return this.studentRepository.streamAll();
+    }
+
+    /**
+     * Finds the students that are not allocated on any day of a period
+     *
+     * @param from         first day of the period
+     * @param to           last day of the period
+     * @param employmentId ID of employment or null for all students
+     * @return List with the free students ordered by ID
+     */
+    public List<Student> getAvailableStudents(final LocalDate from, final LocalDate to,
+                                              final Long employmentId) {
+        final Set<Long> occupied = this.allocationIndex.findOccupiedStudents(from, to);
+        final List<Student> students = employmentId == null
+                ? this.studentRepository.findAll()
+                : this.studentRepository.findByEmploymentId(employmentId);
+        return students.stream().filter(student -> !occupied.contains(student.getId()))
+                .sorted(Comparator.comparing(Student::getId)).toList();
+    }
+
+    /**
+     * Reports the allocations of a student per day, week or month. The report is read from the
+     * maintained timeline of the student, so it does not depend on the number of allocations.
+     *
+     * @param id     of student
+     * @param from   first day of the report
+     * @param to     last day of the report
+     * @param bucket length of the periods of the report
+     * @return List with the utilization of each period
+     */
+    public List<Utilization> getUtilization(final Long id, final LocalDate from, final LocalDate to,
+                                            final UtilizationBucket bucket) {
+        return this.allocationIndex.getStudentUtilization(id, from, to, bucket);
+    }
+
     /**
      * @param id of student
      * @return Optional<Student>
@@ -50,8 +149,59 @@ public class StudentService {
      * @return the saved student
      */
     public Student setStudent(final Student student) {
-        student.setEmployment(this.employmentRepository.save(student.getEmployment()));
-        return this.studentRepository.save(student);
+
+        // Unchanged students and employments are not merged again, the saved copy is enough
+        final Student saved = student.getId() == null ? null
+                : this.studentRepository.findById(student.getId()).orElse(null);
+        if (saved != null && isUnchanged(saved, student)) {
+            return saved;
+        }
+        if (saved != null && isUnchanged(saved.getEmployment(), student.getEmployment())) {
+            student.setEmployment(saved.getEmployment());
+        } else {
+            student.setEmployment(this.findOrSetEmployment(student.getEmployment()));
+        }
+        final Student result = this.studentRepository.save(student);
+        this.entityVersions.students.increment(result.getId());
+        return result;
+    }
+
+    /**
+     * Edits a saved student with a single conditional update. A new employment is saved first, a
+     * saved employment is only referenced and is edited with its own endpoint. The new employment
+     * is rolled back if the edit fails. The edited student is returned with its saved employment.
+     *
+     * @param student edited student with the version it was read with
+     * @return Optional with the edited student, empty if it or its employment does not exist or
+     * if it was edited since
+     * @throws ConstraintViolationException if the student is invalid
+     */
+    @Transactional
+    public Optional<Student> editStudent(final Student student) {
+        final Set<ConstraintViolation<Student>> violations = this.validator.validate(student);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        if (student.getEmployment().getId() == null) {
+            student.setEmployment(this.findOrSetEmployment(student.getEmployment()));
+        } else {
+            final Optional<Employment> employment =
+                    this.employmentService.getEmployment(student.getEmployment().getId());
+            if (employment.isEmpty()) {
+                return Optional.empty();
+            }
+            student.setEmployment(employment.get());
+        }
+        if (this.studentRepository.updateIfCurrent(student.getId(), student.getVersion(),
+                student.getFirstName(), student.getLastName(), student.getEmployment()) == 0) {
+
+            // Also rolls back the entities that were saved for the edit
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return Optional.empty();
+        }
+        student.setVersion(student.getVersion() + 1);
+        this.entityVersions.students.increment(student.getId());
+        return Optional.of(student);
     }
 
     /**
@@ -65,12 +215,40 @@ public class StudentService {
         student.ifPresent(value -> {
 
             // Deletes all allocations with that student
-            this.allocationRepository.findAll().stream()
-                    .filter(alloc -> alloc.getStudent().equals(value))
-                    .forEach(alloc -> this.allocationRepository.deleteById(alloc.getId()));
+            this.allocationRepository.deleteByStudentId(id);
+            this.allocationIndex.removeStudent(id);
 
             this.studentRepository.deleteById(id);
+            this.entityVersions.students.increment(id);
         });
         return student;
     }
+
+    /**
+     * Finds a saved employment in the cache or saves a new or edited employment. New employments
+     * are found by their name, so an import does not read the employment for each student.
+     */
+    private Employment findOrSetEmployment(final Employment employment) {
+        final Optional<Employment> saved = employment.getId() != null
+                ? this.employmentService.getEmployment(employment.getId())
+                : Optional.ofNullable(employment.getName())
+                .flatMap(this.employmentService::getEmployment);
+        return saved.filter(cached -> employment.getId() == null
+                        || isUnchanged(cached, employment))
+                .orElseGet(() -> this.employmentService.setEmployment(employment));
+    }
+
+    private static boolean isUnchanged(final Student saved, final Student student) {
+        return saved.getVersion() == student.getVersion()
+                && Objects.equals(saved.getFirstName(), student.getFirstName())
+                && Objects.equals(saved.getLastName(), student.getLastName())
+                && isUnchanged(saved.getEmployment(), student.getEmployment());
+    }
+
+    private static boolean isUnchanged(final Employment saved, final Employment employment) {
+        return saved != null && employment != null && employment.getId() != null
+                && Objects.equals(saved.getId(), employment.getId())
+                && saved.getVersion() == employment.getVersion()
+                && Objects.equals(saved.getName(), employment.getName());
+    }
 }
@@ -0,0 +1,163 @@
+package de.philippbomers.management.students.student_manager.service;
+
+/**
+ * Number of allocations on each day, stored as prefix sums
+ * <p>
+ * Two Fenwick trees over the days hold the difference array of the counts and its weighted
+ * copy, so adding an allocation period and summing the counts of any period both take O(log d),
+ * where d is the number of days the timeline covers. The covered days grow when an allocation
+ * begins before or ends after them.
+ * <p>
+ * Only the days of a fixed window are counted: {@value #MAX_CAPACITY} days from 1970-01-01 until
+ * 2149-06-06. Periods are clipped to it, so a timeline never needs more than about 1 MB.
+ * <p>
+ * The timeline is not thread-safe.
+ */
+class Timeline {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private static final int MAX_CAPACITY = 1 << 16;
+
+    // Epoch days of the first and last day that can be counted
+    private static final long FIRST_DAY = 0;
+
+    private static final long LAST_DAY = FIRST_DAY + MAX_CAPACITY - 1;
+
+    // Epoch day of the first covered day
+    private long base;
+
+    private long[] counts = new long[0];
+
+    private long[] weightedCounts = new long[0];
+
+    // Number of allocations, the timeline is empty if there is none
+    private int allocations;
+
+    /**
+     * Adds an allocation on each day of a period
+     *
+     * @param begin first epoch day
+     * @param end   last epoch day
+     */
+    void add(final long begin, final long end) {
+        final long first = Math.max(begin, FIRST_DAY);
+        final long last = Math.min(end, LAST_DAY);
+        if (first <= last) {
+            this.cover(first, last);
+            this.addRange(first - this.base, last - this.base, 1);
+        }
+        this.allocations++;
+    }
+
+    /**
+     * Removes an allocation that was added with the same period
+     *
+     * @param begin first epoch day
+     * @param end   last epoch day
+     */
+    void remove(final long begin, final long end) {
+        final long first = Math.max(begin, FIRST_DAY);
+        final long last = Math.min(end, LAST_DAY);
+        if (first <= last) {
+            this.addRange(first - this.base, last - this.base, -1);
+        }
+        this.allocations--;
+    }
+
+    /**
+     * @param from first epoch day
+     * @param to   last epoch day
+     * @return sum of the allocations of each day of the period
+     */
+    long sum(final long from, final long to) {
+        final long capacity = this.counts.length - 1;
+        final long first = Math.max(from - this.base, 0);
+        final long last = Math.min(to - this.base, capacity - 1);
+        if (first > last) {
+            return 0;
+        }
+        return this.prefixSum(last) - (first == 0 ? 0 : this.prefixSum(first - 1));
+    }
+
+    boolean isEmpty() {
+        return this.allocations == 0;
+    }
+
+    /**
+     * Grows the timeline, so it covers the period
+     */
+    private void cover(final long begin, final long end) {
+        final int capacity = this.counts.length - 1;
+        if (capacity > 0 && begin >= this.base && end < this.base + capacity) {
+            return;
+        }
+
+        // Reads the counts of the covered days, before the trees are replaced
+        final long oldBase = this.base;
+        final long[] oldCounts = new long[Math.max(capacity, 0)];
+        for (int day = 0; day < capacity; day++) {
+            oldCounts[day] = this.prefixCount(day);
+        }
+
+        // The covered days are clipped to the window, so they never need more than the maximum
+        final long newBegin = Math.max(capacity > 0 ? Math.min(begin, oldBase) : begin, FIRST_DAY);
+        final long newEnd = Math.min(capacity > 0 ? Math.max(end, oldBase + capacity - 1) : end,
+                LAST_DAY);
+        long newCapacity = Math.max(MIN_CAPACITY, 2L * capacity);
+        while (newCapacity < newEnd - newBegin + 1) {
+            newCapacity *= 2;
+        }
+        newCapacity = Math.min(newCapacity, MAX_CAPACITY);
+
+        // Leaves room before the first day, because earlier periods are added as well
+        this.base = newBegin - (newCapacity - (newEnd - newBegin + 1)) / 2;
+        this.counts = new long[(int) newCapacity + 1];
+        this.weightedCounts = new long[(int) newCapacity + 1];
+        for (int day = 0; day < oldCounts.length; day++) {
+            if (oldCounts[day] != 0) {
+                final long index = oldBase + day - this.base;
+                this.addRange(index, index, oldCounts[day]);
+            }
+        }
+    }
+
+    /**
+     * Adds a value to each day of a range, by updating the difference array
+     */
+    private void addRange(final long first, final long last, final long value) {
+        this.update(first, value, value * first);
+        this.update(last + 1, -value, -value * (last + 1));
+    }
+
+    private void update(final long index, final long value, final long weightedValue) {
+        for (int i = (int) index + 1; i < this.counts.length; i += i & -i) {
+            this.counts[i] += value;
+            this.weightedCounts[i] += weightedValue;
+        }
+    }
+
+    /**
+     * @return count of one day: the sum of the difference array up to the day
+     */
+    private long prefixCount(final long index) {
+        long count = 0;
+        for (int i = (int) index + 1; i > 0; i -= i & -i) {
+            count += this.counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return sum of the counts of all days up to the day
+     */
+    private long prefixSum(final long index) {
+        long count = 0;
+        long weightedCount = 0;
+        for (int i = (int) index + 1; i > 0; i -= i & -i) {
+            count += this.counts[i];
+            weightedCount += this.weightedCounts[i];
+        }
+        return count * (index + 1) - weightedCount;
+    }
+}
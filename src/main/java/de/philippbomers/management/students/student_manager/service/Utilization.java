@@ -0,0 +1,16 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.time.LocalDate;
+
+/**
+ * Utilization of a project or a student in one bucket of a report
+ *
+ * @param begin            first day of the bucket
+ * @param end              last day of the bucket
+ * @param allocationDays   sum of the allocations of each day: one allocation for a whole week
+ *                         counts seven days
+ * @param averageHeadcount average number of allocations per day
+ */
+public record Utilization(LocalDate begin, LocalDate end, long allocationDays,
+                          double averageHeadcount) {
+}
@@ -0,0 +1,30 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Length of the periods a utilization report is divided into
+ */
+public enum UtilizationBucket {
+
+    DAY,
+
+    // Weeks end on Sunday
+    WEEK,
+
+    MONTH;
+
+    /**
+     * @param begin first day of the bucket
+     * @return last day of the bucket that begins on the day
+     */
+    LocalDate getEnd(final LocalDate begin) {
+        return switch (this) {
+            case DAY -> begin;
+            case WEEK -> begin.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+            case MONTH -> begin.with(TemporalAdjusters.lastDayOfMonth());
+        };
+    }
+}
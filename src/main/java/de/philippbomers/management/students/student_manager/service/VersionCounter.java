@@ -0,0 +1,68 @@
+package de.philippbomers.management.students.student_manager.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the writes of a table and of its entities, so an unchanged table or entity can be
+ * recognized without reading it
+ * <p>
+ * The version of an entity is the version of the table at its last write. Entities share a fixed
+ * number of slots, so the memory does not grow with the table. Entities in the same slot change
+ * their version together, which only makes a client read an unchanged entity again.
+ */
+class VersionCounter {
+
+    private static final int SLOTS = 4096;
+
+    private final AtomicLong table = new AtomicLong();
+
+    private final AtomicLongArray entities = new AtomicLongArray(SLOTS);
+
+    /**
+     * @return version of the table
+     */
+    long get() {
+        return this.table.get();
+    }
+
+    /**
+     * @param id of entity
+     * @return version of the entity, 0 if it was not written since the start
+     */
+    long get(final Long id) {
+        return this.entities.get(slot(id));
+    }
+
+    /**
+     * Counts a write now and again when the current transaction is completed, because until then
+     * a reader can still read the old state with the new version
+     *
+     * @param id of the written entity
+     */
+    void increment(final Long id) {
+        this.count(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(final int status) {
+                    VersionCounter.this.count(id);
+                }
+            });
+        }
+    }
+
+    private void count(final Long id) {
+        final long version = this.table.incrementAndGet();
+
+        // Concurrent writes can finish in any order, but a version must never go back
+        this.entities.accumulateAndGet(slot(id), version, Math::max);
+    }
+
+    private static int slot(final Long id) {
+        return Long.hashCode(id) & (SLOTS - 1);
+    }
+}
@@ -1,11 +1,32 @@
 package de.philippbomers.management.students.student_manager;
 
+import de.philippbomers.management.students.student_manager.config.AllocationBatchProperties;
 import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Period;
+import de.philippbomers.management.students.student_manager.entity.Project;
 import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.repository.AllocationRepository;
+import de.philippbomers.management.students.student_manager.service.AllocationBatchResult;
+import de.philippbomers.management.students.student_manager.service.CoalescingStatistics;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 
@@ -19,6 +40,12 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class AllocationControllerTest extends StudentManagerTest {
 
+    @Autowired
+    private AllocationBatchProperties allocationBatchProperties;
+
+    @Autowired
+    private AllocationRepository allocationRepository;
+
     /**
      * Tests the PUT-mapping method
      */
@@ -74,7 +101,7 @@ public class AllocationControllerTest extends StudentManagerTest {
 
         // Tests the Get method
         assertEquals(allocation.getId(), this.allocationController
-                .getAllocation(allocation.getId()).getId());
+                .getAllocation(allocation.getId(), null).getBody().getId());
 
         // We need an atomic object to access it in IntStream
         final AtomicReference<Allocation> testAllocation =
@@ -87,11 +114,11 @@ public class AllocationControllerTest extends StudentManagerTest {
 
         // Checks if GET request works with last allocation
         assertEquals(testAllocation.get().getId(), this.allocationController
-                .getAllocation(testAllocation.get().getId()).getId());
+                .getAllocation(testAllocation.get().getId(), null).getBody().getId());
 
         // Controller throws exception if allocation could not be found
         assertThrows(ResponseStatusException.class,
-                () -> this.allocationController.getAllocation(Long.MAX_VALUE));
+                () -> this.allocationController.getAllocation(Long.MAX_VALUE, null).getBody());
     }
 
     /**
@@ -105,16 +132,340 @@ public class AllocationControllerTest extends StudentManagerTest {
                 .setAllocation(this.createAllocation(i + 1, i + 2)));
 
         // Tests if the allocations are saved
-        assertEquals(10, this.allocationController.getAllocations().size());
+        assertEquals(10, this.allocationController.getAllocations(null).getBody().size());
 
         // Deletes all allocations
-        this.allocationController.getAllocations().forEach(
+        this.allocationController.getAllocations(null).getBody().forEach(
                 alloc -> this.allocationService.deleteAllocation(alloc.getId()));
 
         // Returns an empty list if
-        assertTrue(this.allocationController.getAllocations().isEmpty());
+        assertTrue(this.allocationController.getAllocations(null).getBody().isEmpty());
+    }
+
+    /**
+     * Tests the GET-mapping methods with keyset pagination and streaming
+     */
+    @Test
+    void testGetAllocationsPage() throws Exception {
+
+        // Creates and saves multiple allocations
+        IntStream.range(0, 25).forEach(i -> this.allocationService
+                .setAllocation(this.createAllocation(i % 20 + 1, i % 20 + 2)));
+
+        // Reads the first page and the rest after its last allocation
+        final List<Allocation> firstPage = this.allocationController.getAllocations(0, 10);
+        assertEquals(10, firstPage.size());
+        final List<Allocation> lastPage =
+                this.allocationController.getAllocations(firstPage.get(9).getId(), 20);
+        assertEquals(15, lastPage.size());
+        assertTrue(firstPage.get(9).getId() < lastPage.get(0).getId());
+
+        // Streams all allocations
+        assertEquals(25, this.countStreamedEntities(this.allocationController.streamAllocations()));
+
+        // It should throw an Exception if the limit is invalid
+        assertThrows(ResponseStatusException.class,
+                () -> this.allocationController.getAllocations(0, 0));
+
+        // A request for a page and a stream is answered with the stream
+        assertEquals("streamAllocations",
+                this.getHandlerName("/api/allocation", "limit", "10", "stream", "true"));
+    }
+
+
+    /**
+     * Tests that all allocations are loaded in a single query, including their associations
+     */
+    @Test
+    void testGetAllocationsQueryCount() {
+
+        // Creates allocations with different students, projects and employments
+        IntStream.range(0, 10).forEach(i -> this.allocationService
+                .setAllocation(this.createAllocation(i + 1, i + 2)));
+
+        final Statistics statistics = this.measure(() -> {
+            final List<Allocation> allocations = this.allocationService.getAllAllocations();
+            assertEquals(10, allocations.size());
+            allocations.forEach(allocation -> assertNotNull(
+                    allocation.getStudent().getEmployment().getName()));
+        });
+
+        // One select, no matter how many students and projects the allocations have
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Tests that an allocation of a new student reads its project and employment from the caches
+     */
+    @Test
+    void testAddAllocationQueryCount() {
+        final Allocation first = this.allocationService.setAllocation(this.createAllocation(1, 5));
+        final Employment employment = first.getStudent().getEmployment();
+        this.projectService.getProject(first.getProject().getId());
+        this.employmentService.getEmployment(employment.getId());
+
+        final Statistics statistics = this.measure(() -> assertNotNull(this.allocationService
+                .setAllocation(Allocation.builder().project(first.getProject())
+                        .period(this.createPeriod(6, 10))
+                        .student(this.createStudent(employment)).build())));
+
+        assertEquals(0, statistics.getEntityStatistics(Project.class.getName()).getLoadCount());
+        assertEquals(0, statistics.getEntityStatistics(Employment.class.getName())
+                .getLoadCount());
+
+        // The inserts of the period, the student and the allocation and at most one sequence
+        // call for each of them
+        assertTrue(statistics.getPrepareStatementCount() <= 6);
+    }
+
+    /**
+     * Tests that concurrent requests for all allocations share the queries
+     */
+    @Test
+    void testGetAllocationsCoalesced() throws Exception {
+        IntStream.range(0, 200).forEach(i -> this.allocationService
+                .setAllocation(this.createAllocation(i % 20 + 1, i % 20 + 2)));
+        final CoalescingStatistics before = this.allocationController.getCoalescingStatistics();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        final Statistics statistics;
+        try {
+            statistics = this.measure(() -> {
+
+                // Requests that start together wait for the same query
+                for (int round = 0; round < 10; round++) {
+                    final CyclicBarrier start = new CyclicBarrier(16);
+                    final List<Future<Integer>> sizes = new ArrayList<>();
+                    for (int client = 0; client < 16; client++) {
+                        sizes.add(executor.submit(() -> {
+                            start.await();
+                            return this.allocationController.getAllocations(null).getBody()
+                                    .size();
+                        }));
+                    }
+                    for (final Future<Integer> size : sizes) {
+                        assertEquals(200, assertDoesNotThrow(() -> size.get()));
+                    }
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        final CoalescingStatistics after = this.allocationController.getCoalescingStatistics();
+        assertEquals(16 * 10, after.requests() - before.requests());
+        assertEquals(after.queries() - before.queries(), statistics.getPrepareStatementCount());
+        assertTrue(after.coalesced() > before.coalesced());
+    }
+
+    /**
+     * Polls the allocations like many clients and tests that clients with entity tags only cause
+     * queries after a write
+     */
+    @Test
+    void testPollAllocationsConditionally() {
+        final List<Allocation> allocations = IntStream.range(0, 10).mapToObj(i -> this
+                .allocationService.setAllocation(this.createAllocation(0, 0))).toList();
+
+        final long unconditional = this.countPollStatements(allocations, false);
+        final long conditional = this.countPollStatements(allocations, true);
+
+        // Each poll without tags queries the list and the allocation
+        assertEquals(2 * 20 * 50, unconditional);
+
+        // With tags only the 5 rounds after a write query
+        assertEquals(2 * 20 * 5, conditional);
+    }
+
+    /**
+     * Lets 20 clients poll the list and an allocation in 50 rounds and adds an allocation every
+     * 10 rounds
+     *
+     * @param allocations to poll
+     * @param conditional whether the clients send the entity tags of their previous answers
+     * @return number of statements of the polls
+     */
+    private long countPollStatements(final List<Allocation> allocations,
+                                     final boolean conditional) {
+        final String[] listTags = new String[20];
+        final String[] allocationTags = new String[20];
+        long statements = 0;
+        for (int round = 0; round < 50; round++) {
+            final boolean written = round % 10 == 0;
+            if (written) {
+                this.allocationService.setAllocation(this.createAllocation(0, 0));
+            }
+            statements += this.measure(() -> {
+                for (int client = 0; client < 20; client++) {
+                    final ResponseEntity<List<Allocation>> list = this.allocationController
+                            .getAllocations(conditional ? listTags[client] : null);
+                    final ResponseEntity<Allocation> allocation = this.allocationController
+                            .getAllocation(allocations.get(client % allocations.size()).getId(),
+                                    conditional ? allocationTags[client] : null);
+
+                    // Clients keep their copy and its tag if nothing changed
+                    assertEquals(conditional && !written ? HttpStatus.NOT_MODIFIED
+                            : HttpStatus.OK, list.getStatusCode());
+                    assertEquals(list.getStatusCode(), allocation.getStatusCode());
+                    listTags[client] = list.getHeaders().getETag();
+                    allocationTags[client] = allocation.getHeaders().getETag();
+                }
+            }).getPrepareStatementCount();
+        }
+        return statements;
+    }
+
+    /**
+     * Tests the GET-mapping method for overlapping allocations
+     */
+    @Test
+    void testGetOverlappingAllocations() {
+        final LocalDate month = LocalDate.now();
+
+        // Creates two allocations of one student and one of another student in the same project
+        final Allocation first = this.allocationService.setAllocation(this.createAllocation(1, 5));
+        final Allocation second = this.createAllocation(10, 15);
+        second.setStudent(first.getStudent());
+        second.setProject(first.getProject());
+        this.allocationService.setAllocation(second);
+        final Allocation other = this.createAllocation(20, 25);
+        other.setProject(first.getProject());
+        this.allocationService.setAllocation(other);
+
+        // Finds the allocations of the student that have at least one day in the period
+        final Long student = first.getStudent().getId();
+        assertEquals(List.of(first, second), this.allocationController.getOverlappingAllocations(
+                student, null, month.withDayOfMonth(5), month.withDayOfMonth(10)));
+        assertTrue(this.allocationController.getOverlappingAllocations(
+                student, null, month.withDayOfMonth(6), month.withDayOfMonth(9)).isEmpty());
+        assertEquals(List.of(first, second, other), this.allocationController
+                .getOverlappingAllocations(null, first.getProject().getId(),
+                        month.withDayOfMonth(1), month.withDayOfMonth(28)));
+
+        // Edited periods and deleted allocations are updated
+        first.getPeriod().setEnd(month.withDayOfMonth(7));
+        this.periodService.setPeriod(first.getPeriod());
+        assertEquals(List.of(first), this.allocationController.getOverlappingAllocations(
+                student, null, month.withDayOfMonth(6), month.withDayOfMonth(9)));
+        this.allocationController.deleteAllocation(first.getId());
+        assertTrue(this.allocationController.getOverlappingAllocations(
+                student, null, month.withDayOfMonth(6), month.withDayOfMonth(9)).isEmpty());
+
+        // It should throw an Exception if the parameters are invalid
+        assertThrows(ResponseStatusException.class, () -> this.allocationController
+                .getOverlappingAllocations(null, null, month, month));
+        assertThrows(ResponseStatusException.class, () -> this.allocationController
+                .getOverlappingAllocations(student, null, month, month.minusDays(1)));
+    }
+
+    /**
+     * Tests the PUT-mapping method for many allocations
+     */
+    @Test
+    void testAddAllocationsBatch() {
+        final Project project = this.projectService.setProject(this.createProject());
+        final Student saved = this.studentService.setStudent(this.createStudent());
+        final int students = this.studentService.getAllStudents().size();
+        final int employments = this.employmentService.getAllEmployments().size();
+
+        // Each allocation has its own copy of the same new student, like a parsed JSON request
+        final List<Allocation> allocations = new ArrayList<>();
+        IntStream.range(0, 10).forEach(i -> allocations.add(Allocation.builder()
+                .project(Project.builder().id(project.getId()).build())
+                .period(this.createPeriod(i + 1, i + 2))
+                .student(Student.builder().firstName("Batch").lastName("Student")
+                        .employment(Employment.builder().name("Batch Employment").build()).build())
+                .build()));
+
+        // Saved students are referenced by ID
+        allocations.add(Allocation.builder().project(project).period(this.createPeriod(0, 0))
+                .student(Student.builder().id(saved.getId()).build()).build());
+
+        // Invalid allocations
+        allocations.add(Allocation.builder().period(this.createPeriod(0, 0)).student(saved)
+                .build());
+        allocations.add(Allocation.builder().project(project).period(this.createPeriod(0, 0))
+                .student(Student.builder().id(Long.MAX_VALUE).build()).build());
+        allocations.add(Allocation.builder().project(project).period(Period.builder()
+                .begin(project.getPeriod().getEnd()).end(project.getPeriod().getEnd().plusDays(5))
+                .build()).student(saved).build());
+
+        final List<AllocationBatchResult> results =
+                this.allocationController.addAllocations(allocations);
+        assertEquals(allocations.size(), results.size());
+        IntStream.range(0, 11).forEach(i -> {
+            assertNull(results.get(i).issue());
+            assertNotNull(results.get(i).allocation().getId());
+        });
+        IntStream.range(11, 14).forEach(i -> {
+            assertNotNull(results.get(i).issue());
+            assertNull(results.get(i).allocation());
+        });
+
+        // The new student and its employment are created once
+        assertEquals(11, this.allocationService.getAllAllocations().size());
+        assertEquals(students + 1, this.studentService.getAllStudents().size());
+        assertEquals(employments + 1, this.employmentService.getAllEmployments().size());
+        assertEquals(results.get(0).allocation().getStudent(),
+                results.get(9).allocation().getStudent());
+
+        // The periods are clamped to the project and indexed
+        assertEquals(10, this.allocationService.getStudentOverlaps(
+                results.get(0).allocation().getStudent().getId(), project.getPeriod().getBegin(),
+                project.getPeriod().getEnd()).size());
+
+        // It should throw an Exception if the batch is empty or too large
+        assertThrows(ResponseStatusException.class,
+                () -> this.allocationController.addAllocations(List.of()));
+        assertThrows(ResponseStatusException.class, () -> this.allocationController.addAllocations(
+                Collections.nCopies(this.allocationBatchProperties.getMaxSize() + 1, null)));
+    }
+
+    /**
+     * Tests that a batch that edits a shared period also moves the other allocations of the period
+     */
+    @Test
+    void testAddAllocationsBatchEditsSharedPeriod() {
+        final Allocation first = this.allocationService.setAllocation(this.createAllocation(1, 5));
+        final Period period =
+                this.periodService.getPeriod(first.getPeriod().getId()).orElseThrow();
+        final LocalDate month = LocalDate.now();
+        assertTrue(this.studentController.getAvailableStudents(month.withDayOfMonth(12),
+                month.withDayOfMonth(12), null).contains(first.getStudent()));
+        period.setBegin(month.withDayOfMonth(10));
+        period.setEnd(month.withDayOfMonth(15));
+
+        final List<AllocationBatchResult> results = this.allocationController.addAllocations(
+                List.of(Allocation.builder().project(first.getProject()).period(period)
+                        .student(this.studentService.setStudent(this.createStudent())).build()));
+        assertNull(results.get(0).issue());
+
+        // The first allocation is moved with its period
+        final List<Student> available = this.studentController.getAvailableStudents(
+                month.withDayOfMonth(12), month.withDayOfMonth(12), null);
+        assertFalse(available.contains(first.getStudent()));
+        assertTrue(this.studentController.getAvailableStudents(month.withDayOfMonth(2),
+                month.withDayOfMonth(2), null).contains(first.getStudent()));
     }
 
+    /**
+     * Tests that adding an allocation for a saved student does not save the student and its
+     * employment again
+     */
+    @Test
+    void testAddAllocationStatements() {
+        final Allocation first = this.allocationService.setAllocation(this.createAllocation(1, 5));
+        final Allocation allocation = Allocation.builder().project(first.getProject())
+                .period(this.createPeriod(10, 15)).student(first.getStudent()).build();
+
+        final Statistics statistics = this.measure(
+                () -> assertNotNull(this.allocationController.addAllocation(allocation).getId()));
+
+        // Inserts the period and the allocation, the student is read with its employment and a
+        // sequence call is needed at most once
+        assertTrue(statistics.getPrepareStatementCount() <= 4);
+        assertEquals(0, statistics.getEntityUpdateCount());
+    }
 
     /**
      * Tests the PATCH-mapping method
@@ -135,6 +486,12 @@ public class AllocationControllerTest extends StudentManagerTest {
         assertEquals(student,
                 this.allocationController.editAllocation(allocation).getStudent());
 
+        // A referenced project is returned as it is saved
+        final String projectName = allocation.getProject().getName();
+        allocation.setProject(Project.builder().id(allocation.getProject().getId()).build());
+        assertEquals(projectName,
+                this.allocationController.editAllocation(allocation).getProject().getName());
+
         allocation.setStudent(new Student());
 
         // Controller throws exception if you could not edit allocation
@@ -142,6 +499,50 @@ public class AllocationControllerTest extends StudentManagerTest {
                 () -> this.allocationController.editAllocation(allocation));
     }
 
+    /**
+     * Tests that an edit does not write the unchanged period and student of the allocation
+     */
+    @Test
+    void testEditAllocationKeepsUnchangedPeriod() {
+        final Allocation allocation =
+                this.allocationService.setAllocation(this.createAllocation(1, 5));
+        final String periodTag = this.periodService.getPeriodTag(allocation.getPeriod().getId());
+        final String studentTag =
+                this.studentService.getStudentTag(allocation.getStudent().getId());
+
+        allocation.setProject(this.projectService.setProject(this.createProject()));
+        assertEquals(1, this.allocationController.editAllocation(allocation).getVersion());
+        assertEquals(periodTag, this.periodService.getPeriodTag(allocation.getPeriod().getId()));
+        assertEquals(studentTag,
+                this.studentService.getStudentTag(allocation.getStudent().getId()));
+        assertEquals(0, this.periodService.getPeriod(allocation.getPeriod().getId())
+                .orElseThrow().getVersion());
+    }
+
+    /**
+     * Tests that an edit fails without changing its period, if the allocation was edited since it
+     * was read
+     */
+    @Test
+    void testEditAllocationConcurrently() {
+        final Allocation allocation =
+                this.allocationService.setAllocation(this.createAllocation(1, 5));
+        final Allocation outdated =
+                this.allocationService.getAllocation(allocation.getId()).orElseThrow();
+        allocation.setStudent(this.studentService.setStudent(this.createStudent()));
+        assertEquals(1, this.allocationController.editAllocation(allocation).getVersion());
+
+        // The period of the rejected edit keeps its days in the database and in the index
+        final LocalDate end = outdated.getPeriod().getEnd();
+        outdated.getPeriod().setEnd(end.plusDays(10));
+        assertThrows(ResponseStatusException.class,
+                () -> this.allocationController.editAllocation(outdated));
+        assertEquals(end,
+                this.periodService.getPeriod(outdated.getPeriod().getId()).orElseThrow().getEnd());
+        assertTrue(this.allocationService.getStudentOverlaps(allocation.getStudent().getId(),
+                end.plusDays(1), end.plusDays(10)).isEmpty());
+    }
+
     /**
      * Tests the DELETE-mapping method
      */
@@ -162,7 +563,7 @@ public class AllocationControllerTest extends StudentManagerTest {
                         this.createAllocation(i + 1, i + 2)));
 
         // Deletes all allocations
-        this.allocationController.getAllocations().forEach(
+        this.allocationController.getAllocations(null).getBody().forEach(
                 alloc -> this.allocationController.deleteAllocation(alloc.getId()));
 
         // Checks if all allocations were deleted
@@ -173,6 +574,24 @@ public class AllocationControllerTest extends StudentManagerTest {
                 () -> this.allocationController.deleteAllocation(Long.MAX_VALUE));
     }
 
+    /**
+     * Tests that the period of a deleted allocation is kept while its project uses it
+     */
+    @Test
+    void testDeleteAllocationWithSharedPeriod() {
+        final Allocation allocation = this.createAllocation(1, 5);
+        allocation.setPeriod(allocation.getProject().getPeriod());
+        final Allocation saved = this.allocationService.setAllocation(allocation);
+        final String etag = this.allocationService.getAllocationTag(saved.getId());
+
+        assertEquals(saved, this.allocationController.deleteAllocation(saved.getId()));
+        assertTrue(this.allocationService.getAllocation(saved.getId()).isEmpty());
+        assertTrue(this.periodService.getPeriod(saved.getPeriod().getId()).isPresent());
+
+        // Clients must not keep the deleted allocation
+        assertNotEquals(etag, this.allocationService.getAllocationTag(saved.getId()));
+    }
+
     /**
      * Tests the deletion of periods
      */
@@ -240,6 +659,31 @@ public class AllocationControllerTest extends StudentManagerTest {
 
     }
 
+    /**
+     * Tests that deleting a student or a project does not load the allocations of the others
+     */
+    @Test
+    void testDeleteWithoutLoadingAllocations() {
+
+        // Creates allocations with different students and projects
+        final List<Allocation> allocations = IntStream.range(0, 10).mapToObj(i -> this
+                .allocationService.setAllocation(this.createAllocation(i + 1, i + 2))).toList();
+
+        final Statistics statistics = this.measure(() -> {
+            this.studentController.deleteStudent(allocations.get(0).getStudent().getId());
+            this.projectController.deleteProject(allocations.get(1).getProject().getId());
+        });
+
+        // The allocations are deleted by a query, none of them is loaded
+        assertEquals(0, statistics.getEntityStatistics(Allocation.class.getName())
+                .getLoadCount());
+
+        // Only the allocations of the student and the project are deleted
+        assertTrue(this.allocationService.getAllocation(allocations.get(0).getId()).isEmpty());
+        assertTrue(this.allocationService.getAllocation(allocations.get(1).getId()).isEmpty());
+        assertEquals(8, this.allocationService.getAllAllocations().size());
+    }
+
     /**
      * Tests to add of multiple students to one project
      */
@@ -259,4 +703,15 @@ public class AllocationControllerTest extends StudentManagerTest {
         assertEquals(allocation.getStudent(), this.allocationService
                 .getAllocation(newAllocation.getId()).orElseThrow().getStudent());
     }
+
+    /**
+     * Tests that allocations are found by the indexes of their import hash and their student
+     */
+    @Test
+    void testAllocationIndexes() {
+        this.assertIndexUsed("idx_allocation_student_project",
+                () -> this.allocationRepository.deleteByStudentId(1L), 1L);
+        this.assertIndexUsed("idx_allocation_import_hash",
+                () -> this.allocationRepository.findImportHashes(Set.of("hash")), "hash");
+    }
 }
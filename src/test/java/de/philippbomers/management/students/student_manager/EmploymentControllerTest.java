@@ -2,9 +2,14 @@ package de.philippbomers.management.students.student_manager;
 
 import de.philippbomers.management.students.student_manager.entity.Employment;
 import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.repository.EmploymentRepository;
+import de.philippbomers.management.students.student_manager.service.CacheStatistics;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
@@ -19,6 +24,9 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 class EmploymentControllerTest extends StudentManagerTest {
 
+    @Autowired
+    private EmploymentRepository employmentRepository;
+
     /**
      * Tests the PUT-mapping method
      */
@@ -55,7 +63,7 @@ class EmploymentControllerTest extends StudentManagerTest {
 
         // Tests the GET by ID method
         assertEquals(employment,
-                this.employmentController.getEmployment(employment.getId()));
+                this.employmentController.getEmployment(employment.getId(), null).getBody());
 
         // We need an atomic object to access it in IntStream
         final AtomicReference<Employment> testEmployment =
@@ -67,25 +75,25 @@ class EmploymentControllerTest extends StudentManagerTest {
 
         // Tests if the GET request works for the last created object
         assertEquals(testEmployment.get(), this.employmentController
-                .getEmployment(testEmployment.get().getId()));
+                .getEmployment(testEmployment.get().getId(), null).getBody());
 
         // It should throw an Exception if you could not get an employment
         assertThrows(ResponseStatusException.class,
-                () -> this.employmentController.getEmployment(Long.MAX_VALUE));
+                () -> this.employmentController.getEmployment(Long.MAX_VALUE, null).getBody());
     }
 
     /**
      * Tests the GET-mapping method
      */
     @Test
-    void testGetEmployments() {
+    void testGetEmployments() throws IOException {
 
         // Creates and saves multiple employments
         IntStream.range(0, 10).forEach(
                 i -> this.employmentService.setEmployment(this.createEmployment()));
 
         // Tests if the employments are saved
-        assertEquals(10, this.employmentController.getEmployments().size());
+        assertEquals(10, this.countEntities(this.employmentController.getEmployments(null)));
 
         // Deletes all employments
         this.employmentService.getAllEmployments()
@@ -93,7 +101,37 @@ class EmploymentControllerTest extends StudentManagerTest {
                         .deleteEmployment(employment.getId()));
 
         // Tests if an empty database returns an empty list
-        assertTrue(this.employmentController.getEmployments().isEmpty());
+        assertEquals(0, this.countEntities(this.employmentController.getEmployments(null)));
+    }
+
+    /**
+     * Tests the GET-mapping methods with keyset pagination and streaming
+     */
+    @Test
+    void testGetEmploymentsPage() throws Exception {
+
+        // Creates and saves multiple employments
+        IntStream.range(0, 25).forEach(i -> this.employmentService
+                .setEmployment(this.createEmployment()));
+
+        // Reads the first page and the rest after its last employment
+        final List<Employment> firstPage = this.employmentController.getEmployments(0, 10);
+        assertEquals(10, firstPage.size());
+        final List<Employment> lastPage =
+                this.employmentController.getEmployments(firstPage.get(9).getId(), 20);
+        assertEquals(15, lastPage.size());
+        assertTrue(firstPage.get(9).getId() < lastPage.get(0).getId());
+
+        // Streams all employments
+        assertEquals(25, this.countStreamedEntities(this.employmentController.streamEmployments()));
+
+        // It should throw an Exception if the limit is invalid
+        assertThrows(ResponseStatusException.class,
+                () -> this.employmentController.getEmployments(0, 0));
+
+        // A request for a page and a stream is answered with the stream
+        assertEquals("streamEmployments",
+                this.getHandlerName("/api/employment", "limit", "10", "stream", "true"));
     }
 
     /**
@@ -168,4 +206,49 @@ class EmploymentControllerTest extends StudentManagerTest {
         assertThrows(ResponseStatusException.class, () -> this.employmentController
                 .deleteEmployment(testStudent.get().getEmployment().getId()));
     }
+
+    /**
+     * Tests that employments are found by the unique index of their name
+     */
+    @Test
+    void testEmploymentNameIndex() {
+        this.assertIndexUsed("uk_employment_name",
+                () -> this.employmentRepository.findByName("Employment0"), "Employment0");
+
+        // Names are unique
+        final Employment employment = this.employmentService.setEmployment(this.createEmployment());
+        assertTrue(this.employmentService.getEmployment(employment.getName()).isPresent());
+        assertThrows(ResponseStatusException.class, () -> this.employmentController
+                .addEmployment(Employment.builder().name(employment.getName()).build()));
+    }
+
+    /**
+     * Tests that employments are read from the cache and that edits are seen at once
+     */
+    @Test
+    void testEmploymentCache() {
+        final Employment employment = this.employmentService.setEmployment(this.createEmployment());
+        final CacheStatistics before = this.employmentController.getCacheStatistics();
+
+        // The first lookup loads the employment, the next ones are answered from the cache
+        this.employmentController.getEmployment(employment.getId(), null).getBody();
+        this.employmentController.getEmployment(employment.getId(), null).getBody();
+        assertTrue(this.employmentService.getEmployment(employment.getName()).isPresent());
+        final CacheStatistics after = this.employmentController.getCacheStatistics();
+        assertEquals(1, after.misses() - before.misses());
+        assertEquals(2, after.hits() - before.hits());
+
+        // The renamed employment is found by its new name only
+        this.employmentController.editEmployment(Employment.builder().id(employment.getId())
+                .version(employment.getVersion()).name("Renamed").build());
+        assertEquals("Renamed", this.employmentController.getEmployment(employment.getId(), null)
+                .getBody().getName());
+        assertTrue(this.employmentService.getEmployment(employment.getName()).isEmpty());
+        assertEquals(employment.getId(),
+                this.employmentService.getEmployment("Renamed").orElseThrow().getId());
+
+        // A deleted employment is not found anymore
+        this.employmentController.deleteEmployment(employment.getId());
+        assertTrue(this.employmentService.getEmployment(employment.getId()).isEmpty());
+    }
 }
@@ -1,13 +1,37 @@
 package de.philippbomers.management.students.student_manager;
 
+import de.philippbomers.management.students.student_manager.config.ImportProperties;
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.service.ImportJob;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,6 +40,9 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class FileControllerTest extends StudentManagerTest {
 
+    @Autowired
+    private ImportProperties importProperties;
+
     /**
      * Tests the file upload and save to database
      */
@@ -39,7 +66,7 @@ public class FileControllerTest extends StudentManagerTest {
             // Checks if creation was successfully
             assertFalse(multipartFile.isEmpty());
 
-            this.FileController.uploadExcelFile(multipartFile);
+            this.FileController.uploadExcelFile(multipartFile, true);
 
         } catch (final Exception e) {
 
@@ -60,4 +87,502 @@ public class FileControllerTest extends StudentManagerTest {
             assertFalse(this.allocationService.getAllAllocations().isEmpty());
         }
     }
+
+    /**
+     * Tests if the streaming engine produces the same report and database content as the workbook
+     * engine
+     */
+    @Test
+    void testStreamingImportMatchesWorkbookImport() throws Exception {
+
+        // Imports the test file with the workbook engine
+        final String workbookReport =
+                this.fileService.importExcelFile(this.createTestFile(), false);
+        final int employments = this.employmentService.getAllEmployments().size();
+        final int students = this.studentService.getAllStudents().size();
+        final int projects = this.projectService.getAllProjects().size();
+        final int allocations = this.allocationService.getAllAllocations().size();
+
+        // Imports the test file with the streaming engine into an empty database
+        this.cleanDatabase();
+        final String streamingReport =
+                this.fileService.importExcelFile(this.createTestFile(), true);
+
+        // Both engines must create the same report and the same entities
+        assertEquals(workbookReport, streamingReport);
+        assertEquals(employments, this.employmentService.getAllEmployments().size());
+        assertEquals(students, this.studentService.getAllStudents().size());
+        assertEquals(projects, this.projectService.getAllProjects().size());
+        assertEquals(allocations, this.allocationService.getAllAllocations().size());
+    }
+
+    /**
+     * Tests if a second import finds the existing entities instead of creating new ones
+     */
+    @Test
+    void testReimportFindsExistingEntities() throws Exception {
+
+        // Imports the test file into an empty database
+        this.fileService.importExcelFile(this.createTestFile());
+        final int employments = this.employmentService.getAllEmployments().size();
+        final int students = this.studentService.getAllStudents().size();
+        final int projects = this.projectService.getAllProjects().size();
+
+        // Imports the same file again
+        this.fileService.importExcelFile(this.createTestFile());
+
+        // Existing employments, students and projects are reused
+        assertEquals(employments, this.employmentService.getAllEmployments().size());
+        assertEquals(students, this.studentService.getAllStudents().size());
+        assertEquals(projects, this.projectService.getAllProjects().size());
+    }
+
+    /**
+     * Tests the import in the background
+     */
+    @Test
+    void testImportJob() throws Exception {
+
+        // Returns the queued job immediately
+        ImportJob job = this.FileController.submitImportJob(this.createTestFile(), true);
+        assertNotNull(job.getId());
+
+        // Polls the job until it is done
+        final long timeout = System.currentTimeMillis() + 30_000;
+        while (!job.isDone() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+            job = this.FileController.getImportJob(job.getId());
+        }
+
+        // Checks the progress and the report
+        assertEquals(ImportJob.Status.FINISHED, job.getStatus());
+        assertTrue(job.getRowsProcessed() > 0);
+        assertTrue(job.getRowsFailed() < job.getRowsProcessed());
+        assertTrue(job.getReport().endsWith("Upload Success!"));
+        assertFalse(this.allocationService.getAllAllocations().isEmpty());
+
+        // Controller throws exception if the job could not be found
+        assertThrows(ResponseStatusException.class,
+                () -> this.FileController.getImportJob("unknown"));
+        assertThrows(ResponseStatusException.class,
+                () -> this.FileController.cancelImportJob("unknown"));
+    }
+
+    /**
+     * Tests if uploads leave no files on the server, also if the import fails
+     */
+    @Test
+    void testUploadLeavesNoFiles() throws Exception {
+        final Path spoolDirectory = this.importProperties.getSpoolDirectory();
+
+        // Successful imports with both engines
+        assertTrue(this.fileService.importExcelFile(this.createTestFile(), true)
+                .endsWith("Upload Success!"));
+        assertTrue(this.fileService.importExcelFile(this.createTestFile(), false)
+                .endsWith("Upload Success!"));
+
+        // Upload that is not an .xlsx file
+        final MockMultipartFile invalidFile = new MockMultipartFile("attachments", "test.xlsx",
+                MediaType.MULTIPART_FORM_DATA_VALUE, "no excel file".getBytes());
+        assertEquals("The file could not be opened or read.",
+                this.fileService.importExcelFile(invalidFile, true));
+        assertEquals("The file could not be opened or read.",
+                this.fileService.importExcelFile(invalidFile, false));
+
+        // Neither the spool directory nor the working directory contain a copy of the upload
+        try (var files = Files.list(spoolDirectory)) {
+            assertEquals(0, files.count());
+        }
+        assertFalse(Files.exists(Path.of("test.xlsx")));
+    }
+
+    /**
+     * Tests if imports running at the same time do not mix up their rows
+     */
+    @Test
+    void testConcurrentImports() throws Exception {
+        final int imports = 4;
+        final int rows = 25;
+
+        // Each import has its own employment and project
+        final List<MockMultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < imports; i++) {
+            files.add(this.createImportFile("concurrent" + i + ".xlsx", rows, false, i));
+        }
+
+        // Starts all imports at the same time
+        final ExecutorService executor = Executors.newFixedThreadPool(imports);
+        try {
+            final List<Future<String>> reports = new ArrayList<>();
+            for (int i = 0; i < imports; i++) {
+                final boolean streaming = i % 2 == 0;
+                final MockMultipartFile file = files.get(i);
+                reports.add(executor.submit(
+                        () -> this.fileService.importExcelFile(file, streaming)));
+            }
+            for (final Future<String> report : reports) {
+                assertTrue(report.get().endsWith("Upload Success!"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Every row was saved once
+        assertEquals(imports, this.employmentService.getAllEmployments().size());
+        assertEquals(imports * rows, this.studentService.getAllStudents().size());
+        assertEquals(imports, this.projectService.getAllProjects().size());
+        assertEquals(imports * rows, this.allocationService.getAllAllocations().size());
+
+        // Students and projects belong to the employment of their own file
+        for (final Allocation allocation : this.allocationService.getAllAllocations()) {
+            final String number =
+                    allocation.getProject().getName().replace("Project Concurrent ", "");
+            assertEquals("Employment Concurrent " + number,
+                    allocation.getStudent().getEmployment().getName());
+            assertTrue(allocation.getStudent().getFirstName().startsWith("First" + number + " "));
+        }
+    }
+
+    /**
+     * Tests if the export can be imported again
+     */
+    @Test
+    void testExportExcelFile() throws Exception {
+        final int rows = 30;
+        this.fileService.importExcelFile(this.createImportFile("export.xlsx", rows, false, 0, 1));
+        final int students = this.studentService.getAllStudents().size();
+        final int allocations = this.allocationService.getAllAllocations().size();
+
+        // Writes the export
+        final ResponseEntity<StreamingResponseBody> response =
+                this.FileController.exportExcelFile();
+        assertNotNull(response.getBody());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        // Header row and one row for each allocation
+        try (XSSFWorkbook workbook = new XSSFWorkbook(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals("first_name", workbook.getSheetAt(0).getRow(0).getCell(0)
+                    .getStringCellValue());
+            assertEquals(allocations, workbook.getSheetAt(0).getLastRowNum());
+        }
+
+        // Imports the export into an empty database
+        this.cleanDatabase();
+        this.fileService.importExcelFile(new MockMultipartFile("attachments", "allocations.xlsx",
+                MediaType.MULTIPART_FORM_DATA_VALUE, output.toByteArray()));
+        assertEquals(students, this.studentService.getAllStudents().size());
+        assertEquals(allocations, this.allocationService.getAllAllocations().size());
+    }
+
+    /**
+     * Tests that imported rows are saved in chunks with JDBC batches instead of one statement
+     * per entity
+     */
+    @Test
+    void testImportInBatches() throws Exception {
+        final int rows = this.importProperties.getChunkSize() + 100;
+        final MockMultipartFile file = this.createImportFile("batches.xlsx", rows, false, 0);
+
+        final Statistics statistics = this.measure(() -> assertTrue(
+                this.fileService.importExcelFile(file).endsWith("Upload Success!")));
+
+        // Students, periods and allocations of each row, the employment, the project with its
+        // period and the file
+        assertEquals(3 * rows + 4, statistics.getEntityInsertCount());
+
+        // Each batch is one statement, so there are far fewer statements than rows
+        assertTrue(statistics.getPrepareStatementCount() < rows / 5,
+                "Statements: " + statistics.getPrepareStatementCount());
+        assertEquals(rows, this.allocationService.getAllAllocations().size());
+    }
+
+    /**
+     * Tests if an unchanged file is skipped and a changed file only saves its new rows
+     */
+    @Test
+    void testReimportSkipsImportedRows() throws Exception {
+        final int rows = 10;
+
+        // First import saves all rows
+        final MockMultipartFile file = this.createImportFile("nightly.xlsx", rows, false, 0);
+        assertFalse(this.fileService.importExcelFile(file).contains("Unchanged rows skipped"));
+        assertEquals(rows, this.allocationService.getAllAllocations().size());
+
+        // The same file is skipped
+        assertTrue(this.fileService.importExcelFile(file)
+                .startsWith("The file was already imported"));
+        assertTrue(this.fileService.importExcelFile(file, false)
+                .startsWith("The file was already imported"));
+        assertEquals(rows, this.allocationService.getAllAllocations().size());
+
+        // A changed file only saves its new rows
+        final MockMultipartFile changedFile = this.createImportFile("nightly.xlsx", rows + 2,
+                false, 0);
+        assertTrue(this.fileService.importExcelFile(changedFile)
+                .contains("Unchanged rows skipped: " + rows));
+        assertEquals(rows + 2, this.allocationService.getAllAllocations().size());
+
+        // Deleted allocations are imported again, even from a known file
+        this.allocationService.deleteAllocation(
+                this.allocationService.getAllAllocations().get(0).getId());
+        assertTrue(this.fileService.importExcelFile(changedFile)
+                .contains("Unchanged rows skipped: " + (rows + 1)));
+        assertEquals(rows + 2, this.allocationService.getAllAllocations().size());
+    }
+
+    /**
+     * Tests that a row whose allocation is shorter than its project is found again, so a second
+     * import does not create a duplicate allocation
+     */
+    @Test
+    void testReimportAllocationInsideProject() throws Exception {
+        final LocalDate begin = LocalDate.now().withDayOfMonth(1);
+
+        // The rows only differ in the project end, which is ignored for the saved project, so
+        // the second row is not skipped as already imported
+        final MockMultipartFile file = this.createRowFile("inside.xlsx", begin.plusDays(5),
+                begin.plusDays(10), begin, begin.plusMonths(1));
+        final MockMultipartFile changedFile = this.createRowFile("inside.xlsx",
+                begin.plusDays(5), begin.plusDays(10), begin, begin.plusMonths(2));
+
+        assertTrue(this.fileService.importExcelFile(file).endsWith("Upload Success!"));
+        assertTrue(this.fileService.importExcelFile(changedFile).endsWith("Upload Success!"));
+
+        // The allocation is saved once with its own period
+        final List<Allocation> allocations = this.allocationService.getAllAllocations();
+        assertEquals(1, allocations.size());
+        assertEquals(begin.plusDays(5), allocations.get(0).getPeriod().getBegin());
+        assertEquals(begin.plusDays(10), allocations.get(0).getPeriod().getEnd());
+    }
+
+    /**
+     * Tests that a file is imported again if some of its rows failed or if an allocation was
+     * edited since
+     */
+    @Test
+    void testReimportAfterFailedRowsAndEdits() throws Exception {
+        final int rows = 10;
+
+        // The last row has no allocation end, so its allocation cannot be saved
+        final MockMultipartFile validFile = this.createImportFile("retry.xlsx", rows, false, 0);
+        final MockMultipartFile file;
+        try (XSSFWorkbook workbook = new XSSFWorkbook(validFile.getInputStream());
+             ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+            workbook.getSheetAt(0).getRow(rows).getCell(4).setCellValue("no date");
+            workbook.write(output);
+            file = new MockMultipartFile("attachments", "retry.xlsx",
+                    MediaType.MULTIPART_FORM_DATA_VALUE, output.toByteArray());
+        }
+        this.fileService.importExcelFile(file);
+        assertEquals(rows - 1, this.allocationService.getAllAllocations().size());
+
+        // The file is not remembered, so the failed row is tried again
+        assertTrue(this.fileService.importExcelFile(file)
+                .contains("Unchanged rows skipped: " + (rows - 1)));
+
+        // A file without failed rows is remembered
+        this.cleanDatabase();
+        this.fileService.importExcelFile(validFile);
+        assertTrue(this.fileService.importExcelFile(validFile)
+                .startsWith("The file was already imported"));
+
+        // An edited allocation is recognized
+        final Allocation allocation = this.allocationService.getAllAllocations().get(0);
+        assertTrue(this.allocationService.editAllocation(allocation).isPresent());
+        assertTrue(this.fileService.importExcelFile(validFile)
+                .contains("Unchanged rows skipped: " + (rows - 1)));
+        assertEquals(rows, this.allocationService.getAllAllocations().size());
+    }
+
+    /**
+     * Tests the import of CSV and TSV files
+     */
+    @Test
+    void testUploadCsvFile() {
+        final LocalDate begin = LocalDate.now().withDayOfMonth(1);
+        final LocalDate end = begin.plusMonths(1);
+
+        // Header, a quoted row, a row with an invalid date and an empty line
+        final String csv = "first_name,last_name,employment_name,allocation_from,allocation_to,"
+                + "project_name,project_from,project_to\r\n"
+                + "Anna,Smith,Employment Csv," + begin + "," + end + ",Project Csv," + begin + ","
+                + end + "\r\n"
+                + "\"Ben\",\"Miller\",\"Employment Csv\"," + begin + "," + end
+                + ",\"Project Csv\"," + begin + "," + end + "\r\n"
+                + "Carl,Jones,Employment Csv,2022-13-45," + end + ",Project Csv," + begin + ","
+                + end + "\r\n"
+                + "\r\n";
+
+        final String report = this.FileController.uploadCsvFile(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "csv");
+        assertTrue(report.contains("Row: 3, Column: 3"));
+        assertTrue(report.contains("Upload Success!"));
+        assertEquals(1, this.employmentService.getAllEmployments().size());
+        assertEquals(2, this.studentService.getAllStudents().size());
+        assertEquals(1, this.projectService.getAllProjects().size());
+
+        // The same rows separated by tabs are found in the database
+        final String tsv = csv.replace(',', '\t').replace("\"", "");
+        this.FileController.uploadCsvFile(
+                new ByteArrayInputStream(tsv.getBytes(StandardCharsets.UTF_8)), "tsv");
+        assertEquals(2, this.studentService.getAllStudents().size());
+
+        // Controller throws exception if the format is unknown
+        assertThrows(ResponseStatusException.class, () -> this.FileController.uploadCsvFile(
+                new ByteArrayInputStream(new byte[0]), "xml"));
+    }
+
+    /**
+     * Tests the parallel import of several sheets with a project that is used by all sheets
+     */
+    @Test
+    void testUploadExcelSheets() throws Exception {
+        final int rows = 25;
+        final MockMultipartFile file = this.createImportFile("sheets.xlsx", rows, true, 0, 1, 2,
+                3);
+
+        // Imports all sheets
+        final String report = this.fileService.importExcelSheets(file, null, 1, 0);
+        assertTrue(report.contains("Sheet Department 0:"));
+        assertTrue(report.contains("Sheet Department 3:"));
+        assertTrue(report.endsWith("Upload Success!"));
+
+        // The shared project was created once
+        assertEquals(1, this.projectService.getAllProjects().size());
+        assertEquals(4, this.employmentService.getAllEmployments().size());
+        assertEquals(4 * rows, this.studentService.getAllStudents().size());
+        assertEquals(4 * rows, this.allocationService.getAllAllocations().size());
+
+        // Imports only the selected sheets
+        this.cleanDatabase();
+        this.FileController.uploadExcelSheets(file, List.of(1, 3, 7));
+        assertEquals(2, this.employmentService.getAllEmployments().size());
+        assertEquals(2 * rows, this.allocationService.getAllAllocations().size());
+
+        // Single sheet import reads the selected sheet instead of the first one
+        this.cleanDatabase();
+        this.fileService.importExcelFile(file, 2, 1, 0);
+        assertEquals("Employment Concurrent 2",
+                this.employmentService.getAllEmployments().get(0).getName());
+    }
+
+    /**
+     * Tests that students who appear in several sheets are created only once
+     */
+    @Test
+    void testUploadExcelSheetsWithSharedStudents() throws Exception {
+        final int rows = 25;
+
+        // Three sheets with the same rows
+        final MockMultipartFile file;
+        try (XSSFWorkbook workbook = new XSSFWorkbook(
+                this.createImportFile("students.xlsx", rows, true, 0).getInputStream());
+             ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+            workbook.cloneSheet(0);
+            workbook.cloneSheet(0);
+            workbook.write(output);
+            file = new MockMultipartFile("attachments", "students.xlsx",
+                    MediaType.MULTIPART_FORM_DATA_VALUE, output.toByteArray());
+        }
+
+        final String report = this.fileService.importExcelSheets(file, null, 1, 0);
+        assertFalse(report.contains("Database issue"), report);
+        assertEquals(rows, this.studentService.getAllStudents().size());
+    }
+
+    /**
+     * Creates a multipartFile with generated sheets in the layout of test.xlsx
+     *
+     * @param name          of the file
+     * @param rows          number of data rows of each sheet
+     * @param sharedProject true if all sheets use the same project
+     * @param numbers       one sheet for each number, used in all names of the sheet
+     * @return MockMultipartFile with the generated sheets
+     */
+    private MockMultipartFile createImportFile(final String name, final int rows,
+                                               final boolean sharedProject,
+                                               final int... numbers) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+            final CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat()
+                    .getFormat("yyyy-mm-dd"));
+            final LocalDate begin = LocalDate.now().withDayOfMonth(1);
+
+            for (final int number : numbers) {
+                final Sheet sheet = workbook.createSheet("Department " + number);
+
+                // Header row
+                final Row header = sheet.createRow(0);
+                final String[] titles = {"First name", "Last name", "Employment",
+                        "Allocation from", "Allocation to", "Project", "Project from",
+                        "Project to"};
+                for (int column = 0; column < titles.length; column++) {
+                    header.createCell(column).setCellValue(titles[column]);
+                }
+
+                for (int i = 1; i <= rows; i++) {
+                    final Row row = sheet.createRow(i);
+                    row.createCell(0).setCellValue("First" + number + " " + i);
+                    row.createCell(1).setCellValue("Last" + number + " " + i);
+                    row.createCell(2).setCellValue("Employment Concurrent " + number);
+                    row.createCell(5).setCellValue(sharedProject ? "Project Shared"
+                            : "Project Concurrent " + number);
+                    final int[] dateColumns = {3, 4, 6, 7};
+                    for (int j = 0; j < dateColumns.length; j++) {
+                        final var cell = row.createCell(dateColumns[j]);
+                        cell.setCellValue(j % 2 == 0 ? begin : begin.plusMonths(1));
+                        cell.setCellStyle(dateStyle);
+                    }
+                }
+            }
+
+            workbook.write(output);
+            return new MockMultipartFile("attachments", name,
+                    MediaType.MULTIPART_FORM_DATA_VALUE, output.toByteArray());
+        }
+    }
+
+    /**
+     * Creates a multipartFile with one row in the layout of test.xlsx
+     *
+     * @param name           of the file
+     * @param allocationFrom begin of the allocation
+     * @param allocationTo   end of the allocation
+     * @param projectFrom    begin of the project
+     * @param projectTo      end of the project
+     * @return MockMultipartFile with the row
+     */
+    private MockMultipartFile createRowFile(final String name, final LocalDate allocationFrom,
+                                            final LocalDate allocationTo,
+                                            final LocalDate projectFrom,
+                                            final LocalDate projectTo) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(
+                this.createImportFile(name, 1, false, 0).getInputStream());
+             ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+            final Row row = workbook.getSheetAt(0).getRow(1);
+            row.getCell(3).setCellValue(allocationFrom);
+            row.getCell(4).setCellValue(allocationTo);
+            row.getCell(6).setCellValue(projectFrom);
+            row.getCell(7).setCellValue(projectTo);
+            workbook.write(output);
+            return new MockMultipartFile("attachments", name,
+                    MediaType.MULTIPART_FORM_DATA_VALUE, output.toByteArray());
+        }
+    }
+
+    /**
+     * Creates a multipartFile with the test file
+     *
+     * @return MockMultipartFile with test.xlsx
+     */
+    private MockMultipartFile createTestFile() throws IOException {
+        final File file = new ClassPathResource("test.xlsx").getFile();
+        try (FileInputStream input = new FileInputStream(file)) {
+            return new MockMultipartFile("attachments", file.getName(),
+                    MediaType.MULTIPART_FORM_DATA_VALUE, input);
+        }
+    }
 }
@@ -4,7 +4,9 @@ import de.philippbomers.management.students.student_manager.entity.Period;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
@@ -51,7 +53,7 @@ class PeriodControllerTest extends StudentManagerTest {
         final Period period = this.periodService.setPeriod(this.createPeriod(0, 0));
 
         // Tests the Get method
-        assertEquals(period, this.periodController.getPeriod(period.getId()));
+        assertEquals(period, this.periodController.getPeriod(period.getId(), null).getBody());
 
         // We need an atomic object to access it in IntStream
         final AtomicReference<Period> testPeriod = new AtomicReference<>(new Period());
@@ -62,11 +64,11 @@ class PeriodControllerTest extends StudentManagerTest {
 
         // Tests if last period was created
         assertEquals(testPeriod.get(),
-                this.periodController.getPeriod(testPeriod.get().getId()));
+                this.periodController.getPeriod(testPeriod.get().getId(), null).getBody());
 
         // It should throw an Exception if getting a non-existent period
         assertThrows(ResponseStatusException.class,
-                () -> this.periodController.getPeriod(Long.MAX_VALUE));
+                () -> this.periodController.getPeriod(Long.MAX_VALUE, null).getBody());
     }
 
     /**
@@ -80,14 +82,43 @@ class PeriodControllerTest extends StudentManagerTest {
                 i -> this.periodService.setPeriod(this.createPeriod(0, 0)));
 
         // Tests if the periods are saved
-        assertEquals(10, this.periodController.getPeriods().size());
+        assertEquals(10, this.periodController.getPeriods(null).getBody().size());
 
         // Deletes all periods
         this.periodService.getAllPeriods()
                 .forEach(period -> this.periodService.deletePeriod(period.getId()));
 
         // Tests if receiving an empty list if getting all periods
-        assertTrue(this.periodController.getPeriods().isEmpty());
+        assertTrue(this.periodController.getPeriods(null).getBody().isEmpty());
+    }
+
+    /**
+     * Tests the GET-mapping methods with keyset pagination and streaming
+     */
+    @Test
+    void testGetPeriodsPage() throws Exception {
+
+        // Creates and saves multiple periods
+        IntStream.range(0, 25).forEach(i -> this.periodService.setPeriod(this.createPeriod(0, 0)));
+
+        // Reads the first page and the rest after its last period
+        final List<Period> firstPage = this.periodController.getPeriods(0, 10);
+        assertEquals(10, firstPage.size());
+        final List<Period> lastPage =
+                this.periodController.getPeriods(firstPage.get(9).getId(), 20);
+        assertEquals(15, lastPage.size());
+        assertTrue(firstPage.get(9).getId() < lastPage.get(0).getId());
+
+        // Streams all periods
+        assertEquals(25, this.countStreamedEntities(this.periodController.streamPeriods()));
+
+        // It should throw an Exception if the limit is invalid
+        assertThrows(ResponseStatusException.class,
+                () -> this.periodController.getPeriods(0, 0));
+
+        // A request for a page and a stream is answered with the stream
+        assertEquals("streamPeriods",
+                this.getHandlerName("/api/period", "limit", "10", "stream", "true"));
     }
 
     /**
@@ -1,9 +1,18 @@
 package de.philippbomers.management.students.student_manager;
 
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Period;
 import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.repository.ProjectRepository;
+import de.philippbomers.management.students.student_manager.service.Utilization;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
@@ -18,6 +27,9 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class ProjectControllerTest extends StudentManagerTest {
 
+    @Autowired
+    private ProjectRepository projectRepository;
+
     /**
      * Tests the PUT-mapping method
      */
@@ -49,7 +61,7 @@ public class ProjectControllerTest extends StudentManagerTest {
         final Project project = this.projectService.setProject(this.createProject());
 
         // Tests the Get method
-        assertEquals(project, this.projectController.getProject(project.getId()));
+        assertEquals(project, this.projectController.getProject(project.getId(), null).getBody());
 
         // We need an atomic object to access it in IntStream
         final AtomicReference<Project> testProject = new AtomicReference<>(new Project());
@@ -60,32 +72,61 @@ public class ProjectControllerTest extends StudentManagerTest {
 
         // Tests if last created project is gettable
         assertEquals(testProject.get(),
-                this.projectController.getProject(testProject.get().getId()));
+                this.projectController.getProject(testProject.get().getId(), null).getBody());
 
         // It should throw an Exception if trying to get a non-existent project
         assertThrows(ResponseStatusException.class,
-                () -> this.projectController.getProject(Long.MAX_VALUE));
+                () -> this.projectController.getProject(Long.MAX_VALUE, null).getBody());
     }
 
     /**
      * Tests the GET-mapping method
      */
     @Test
-    void testGetProjects() {
+    void testGetProjects() throws IOException {
 
         // Creates and saves multiple projects
         IntStream.range(0, 10)
                 .forEach(i -> this.projectService.setProject(this.createProject()));
 
         // Tests if the projects are saved
-        assertEquals(10, this.projectController.getProjects().size());
+        assertEquals(10, this.countEntities(this.projectController.getProjects(null)));
 
         // Deletes all projects
         this.projectService.getAllProjects().forEach(
                 project -> this.projectService.deleteProject(project.getId()));
 
         // Checks if response returns an empty List
-        assertTrue(this.projectController.getProjects().isEmpty());
+        assertEquals(0, this.countEntities(this.projectController.getProjects(null)));
+    }
+
+    /**
+     * Tests the GET-mapping methods with keyset pagination and streaming
+     */
+    @Test
+    void testGetProjectsPage() throws Exception {
+
+        // Creates and saves multiple projects
+        IntStream.range(0, 25).forEach(i -> this.projectService.setProject(this.createProject()));
+
+        // Reads the first page and the rest after its last project
+        final List<Project> firstPage = this.projectController.getProjects(0, 10);
+        assertEquals(10, firstPage.size());
+        final List<Project> lastPage =
+                this.projectController.getProjects(firstPage.get(9).getId(), 20);
+        assertEquals(15, lastPage.size());
+        assertTrue(firstPage.get(9).getId() < lastPage.get(0).getId());
+
+        // Streams all projects
+        assertEquals(25, this.countStreamedEntities(this.projectController.streamProjects()));
+
+        // It should throw an Exception if the limit is invalid
+        assertThrows(ResponseStatusException.class,
+                () -> this.projectController.getProjects(0, 0));
+
+        // A request for a page and a stream is answered with the stream
+        assertEquals("streamProjects",
+                this.getHandlerName("/api/project", "limit", "10", "stream", "true"));
     }
 
     /**
@@ -101,7 +142,13 @@ public class ProjectControllerTest extends StudentManagerTest {
         project.setName(name);
 
         // Tests if successfully edited the project
-        assertEquals(name, this.projectController.editProject(project).getName());
+        final Project edited = this.projectController.editProject(project);
+        assertEquals(name, edited.getName());
+
+        // A referenced period is returned as it is saved
+        final LocalDate begin = edited.getPeriod().getBegin();
+        edited.setPeriod(Period.builder().id(edited.getPeriod().getId()).build());
+        assertEquals(begin, this.projectController.editProject(edited).getPeriod().getBegin());
 
         project.setName("");
 
@@ -110,6 +157,26 @@ public class ProjectControllerTest extends StudentManagerTest {
                 () -> this.projectController.editProject(project));
     }
 
+    /**
+     * Tests that an edit fails without saving a new period, if the project was edited since it was
+     * read
+     */
+    @Test
+    void testEditProjectConcurrently() {
+        final Project project = this.projectService.setProject(this.createProject());
+        final Project outdated = this.projectService.getProject(project.getId()).orElseThrow();
+        project.setName("Name");
+        assertEquals(1, this.projectController.editProject(project).getVersion());
+
+        final int periods = this.periodService.getAllPeriods().size();
+        final Project copy = Project.builder().id(outdated.getId()).version(outdated.getVersion())
+                .name("Other").period(this.createPeriod(1, 5)).build();
+        assertThrows(ResponseStatusException.class, () -> this.projectController.editProject(copy));
+        assertEquals(periods, this.periodService.getAllPeriods().size());
+        assertEquals("Name",
+                this.projectService.getProject(project.getId()).orElseThrow().getName());
+    }
+
     /**
      * Tests the DELETE-mapping method
      */
@@ -137,4 +204,125 @@ public class ProjectControllerTest extends StudentManagerTest {
         assertThrows(ResponseStatusException.class,
                 () -> this.projectController.deleteProject(Long.MAX_VALUE));
     }
+
+    /**
+     * Tests that projects are found by the unique index of their name
+     */
+    @Test
+    void testProjectNameIndex() {
+        this.assertIndexUsed("uk_project_name",
+                () -> this.projectRepository.findByName("Project0"), "Project0");
+    }
+
+    /**
+     * Tests the GET-mapping method for the utilization of a project
+     */
+    @Test
+    void testGetProjectUtilization() {
+
+        // Creates allocations at the beginning, in the middle and at the end of a project
+        final Project project = this.projectService.setProject(this.createProject());
+        final LocalDate begin = project.getPeriod().getBegin();
+        final LocalDate end = project.getPeriod().getEnd();
+        final LocalDate month = LocalDate.now().withDayOfMonth(1);
+        final int monthDays = month.lengthOfMonth();
+        for (final Period period : List.of(
+                Period.builder().begin(begin).end(begin.plusDays(9)).build(),
+                this.createPeriod(0, 0),
+                Period.builder().begin(end.minusDays(4)).end(end).build())) {
+            this.allocationService.setAllocation(Allocation.builder().project(project)
+                    .period(this.periodService.setPeriod(period))
+                    .student(this.studentService.setStudent(this.createStudent())).build());
+        }
+
+        // Days of the whole project
+        final List<Utilization> days = this.projectController.getUtilization(project.getId(), begin,
+                end, "day");
+        assertEquals(end.toEpochDay() - begin.toEpochDay() + 1, days.size());
+        assertEquals(10 + monthDays + 5,
+                days.stream().mapToLong(Utilization::allocationDays).sum());
+        assertEquals(1, days.get(0).allocationDays());
+        assertEquals(1.0, days.get(days.size() - 1).averageHeadcount());
+
+        // Weeks end on Sunday
+        final List<Utilization> weeks = this.projectController.getUtilization(project.getId(),
+                begin, end, "week");
+        assertEquals(DayOfWeek.SUNDAY, weeks.get(0).end().getDayOfWeek());
+        assertEquals(10 + monthDays + 5,
+                weeks.stream().mapToLong(Utilization::allocationDays).sum());
+
+        // The current month is allocated on each day
+        final Utilization current = this.projectController.getUtilization(project.getId(), month,
+                month.plusDays(monthDays - 1), "month").get(0);
+        assertEquals(monthDays, current.allocationDays());
+        assertEquals(1.0, current.averageHeadcount());
+
+        // A deleted allocation is removed from the timeline
+        this.allocationService.getAllAllocations().stream()
+                .filter(allocation -> allocation.getPeriod().getBegin().equals(begin))
+                .forEach(allocation -> this.allocationService.deleteAllocation(allocation.getId()));
+        assertEquals(0, this.projectController.getUtilization(project.getId(), begin, begin,
+                "day").get(0).allocationDays());
+
+        // It should throw an Exception if the parameters are invalid
+        assertThrows(ResponseStatusException.class, () -> this.projectController
+                .getUtilization(project.getId(), end, begin, "day"));
+        assertThrows(ResponseStatusException.class, () -> this.projectController
+                .getUtilization(project.getId(), begin, end, "year"));
+    }
+
+    /**
+     * Tests that the utilization only counts the days of the supported window, no matter how long
+     * the allocations are
+     */
+    @Test
+    void testGetProjectUtilizationOfLongPeriods() {
+        final Period whole = Period.builder().begin(LocalDate.of(1900, 1, 1))
+                .end(LocalDate.of(9999, 12, 31)).build();
+        final Project project = this.projectService.setProject(Project.builder().name("Forever")
+                .period(whole).build());
+        final LocalDate month = LocalDate.of(2030, 3, 1);
+        final Allocation forever = this.allocationService.setAllocation(Allocation.builder()
+                .project(project).period(Period.builder().begin(whole.getBegin())
+                        .end(whole.getEnd()).build())
+                .student(this.studentService.setStudent(this.createStudent())).build());
+        this.allocationService.setAllocation(Allocation.builder().project(project)
+                .period(Period.builder().begin(month).end(month.plusDays(30)).build())
+                .student(this.studentService.setStudent(this.createStudent())).build());
+
+        assertEquals(62, this.projectController.getUtilization(project.getId(), month,
+                month.plusDays(30), "month").get(0).allocationDays());
+
+        // Days before 1970 and after the middle of 2149 are not counted
+        assertEquals(0, this.projectController.getUtilization(project.getId(),
+                LocalDate.of(1960, 1, 1), LocalDate.of(1960, 1, 31), "month").get(0)
+                .allocationDays());
+        assertEquals(0, this.projectController.getUtilization(project.getId(),
+                LocalDate.of(2200, 1, 1), LocalDate.of(2200, 1, 31), "month").get(0)
+                .allocationDays());
+
+        // The clipped allocation is removed like the others
+        this.allocationService.deleteAllocation(forever.getId());
+        assertEquals(31, this.projectController.getUtilization(project.getId(), month,
+                month.plusDays(30), "month").get(0).allocationDays());
+    }
+
+    /**
+     * Tests that a cached project shows the edits of its period
+     */
+    @Test
+    void testProjectCacheWithEditedPeriod() {
+        final Project project = this.projectService.setProject(this.createProject());
+        final Period period = project.getPeriod();
+        assertEquals(period.getEnd(), this.projectController.getProject(project.getId(), null)
+                .getBody().getPeriod().getEnd());
+
+        final LocalDate end = period.getEnd().plusDays(7);
+        this.periodController.editPeriod(Period.builder().id(period.getId())
+                .version(period.getVersion()).begin(period.getBegin()).end(end).build());
+        assertEquals(end, this.projectController.getProject(project.getId(), null).getBody()
+                .getPeriod().getEnd());
+        assertEquals(end, this.projectService.getProject(project.getName()).orElseThrow()
+                .getPeriod().getEnd());
+    }
 }
@@ -0,0 +1,85 @@
+package de.philippbomers.management.students.student_manager;
+
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Period;
+import de.philippbomers.management.students.student_manager.entity.Project;
+import de.philippbomers.management.students.student_manager.repository.EmploymentRepository;
+import de.philippbomers.management.students.student_manager.repository.ProjectRepository;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the second-level cache and the query cache of the profile "second-level-cache".
+ * <p>
+ * The statistics count the hits, so the tests check that the caches are used and that the
+ * conditional updates of the PATCH-mapping methods invalidate them.
+ */
+@ActiveProfiles("second-level-cache")
+class SecondLevelCacheTest extends StudentManagerTest {
+
+    @Autowired
+    private EmploymentRepository employmentRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    /**
+     * Tests that a period is read from the second-level cache until it is edited
+     */
+    @Test
+    void testGetPeriodFromCache() {
+        final Period period = this.periodService.setPeriod(this.createPeriod(1, 2));
+        this.periodController.getPeriod(period.getId(), null);
+
+        // Repeated reads find the period in the cache
+        Statistics statistics = this.measure(
+                () -> assertNotNull(this.periodController.getPeriod(period.getId(), null)));
+        assertEquals(1, statistics.getSecondLevelCacheHitCount());
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        // The conditional update evicts the period, so the next read loads the edited period
+        period.setEnd(period.getEnd().plusDays(1));
+        assertEquals(1, this.periodController.editPeriod(period).getVersion());
+        final AtomicReference<Period> edited = new AtomicReference<>();
+        statistics = this.measure(() -> edited.set(
+                this.periodController.getPeriod(period.getId(), null).getBody()));
+        assertEquals(0, statistics.getSecondLevelCacheHitCount());
+        assertEquals(period.getEnd(), edited.get().getEnd());
+        assertEquals(1, edited.get().getVersion());
+    }
+
+    /**
+     * Tests that the name lookups of employments and projects are read from the query cache until
+     * an employment is edited
+     */
+    @Test
+    void testFindByNameFromQueryCache() {
+        final Employment employment = this.employmentService.setEmployment(this.createEmployment());
+        final Project project = this.projectService.setProject(this.createProject());
+        final String name = employment.getName();
+        this.employmentRepository.findByName(name);
+        this.projectRepository.findByName(project.getName());
+
+        // Repeated lookups find the results and their entities in the caches
+        Statistics statistics = this.measure(() -> {
+            assertTrue(this.employmentRepository.findByName(name).isPresent());
+            assertTrue(this.projectRepository.findByName(project.getName()).isPresent());
+        });
+        assertEquals(2, statistics.getQueryCacheHitCount());
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        // The conditional update invalidates the cached results, so the old name is not found
+        employment.setName(name + "Edited");
+        assertEquals(1, this.employmentController.editEmployment(employment).getVersion());
+        statistics = this.measure(
+                () -> assertTrue(this.employmentRepository.findByName(name).isEmpty()));
+        assertEquals(0, statistics.getQueryCacheHitCount());
+        assertTrue(this.employmentRepository.findByName(name + "Edited").isPresent());
+    }
+}
@@ -0,0 +1,42 @@
+package de.philippbomers.management.students.student_manager;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL that Hibernate sends to the database, so tests can check the statements that the
+ * repositories actually generate. Registered for all tests by StudentManagerTest.
+ */
+public class SqlRecorder implements StatementInspector {
+
+    // Statements of the current thread, null if the thread does not record
+    private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+
+    /**
+     * Runs the statements of a task and records their SQL
+     *
+     * @param task that uses the database in the current thread
+     * @return SQL of the statements in the order they were prepared
+     */
+    static List<String> record(Runnable task) {
+        final List<String> statements = new ArrayList<>();
+        STATEMENTS.set(statements);
+        try {
+            task.run();
+        } finally {
+            STATEMENTS.remove();
+        }
+        return statements;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        final List<String> statements = STATEMENTS.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+}
@@ -1,9 +1,21 @@
 package de.philippbomers.management.students.student_manager;
 
+import de.philippbomers.management.students.student_manager.entity.Allocation;
+import de.philippbomers.management.students.student_manager.entity.Employment;
+import de.philippbomers.management.students.student_manager.entity.Period;
+import de.philippbomers.management.students.student_manager.entity.Project;
 import de.philippbomers.management.students.student_manager.entity.Student;
+import de.philippbomers.management.students.student_manager.repository.StudentRepository;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
@@ -18,6 +30,9 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class StudentControllerTest extends StudentManagerTest {
 
+    @Autowired
+    private StudentRepository studentRepository;
+
     /**
      * Tests the PUT-mapping method
      */
@@ -49,7 +64,7 @@ public class StudentControllerTest extends StudentManagerTest {
         final Student student = this.studentService.setStudent(this.createStudent());
 
         // Tests the Get method
-        assertEquals(student, this.studentController.getStudent(student.getId()));
+        assertEquals(student, this.studentController.getStudent(student.getId(), null).getBody());
 
         // We need an atomic object to access it in IntStream
         final AtomicReference<Student> testStudent = new AtomicReference<>(new Student());
@@ -60,32 +75,86 @@ public class StudentControllerTest extends StudentManagerTest {
 
         // Test if we can get the last student
         assertEquals(testStudent.get(),
-                this.studentController.getStudent(testStudent.get().getId()));
+                this.studentController.getStudent(testStudent.get().getId(), null).getBody());
 
         // It should throw an Exception if getting a non-existent student
         assertThrows(ResponseStatusException.class,
-                () -> this.studentController.getStudent(Long.MAX_VALUE));
+                () -> this.studentController.getStudent(Long.MAX_VALUE, null).getBody());
     }
 
     /**
      * Tests the GET-mapping method
      */
     @Test
-    void testGetStudents() {
+    void testGetStudents() throws IOException {
 
         // Creates and saves multiple students
         IntStream.range(0, 10)
                 .forEach(i -> this.studentService.setStudent(this.createStudent()));
 
         // Tests if the students are saved
-        assertEquals(10, this.studentController.getStudents().size());
+        assertEquals(10, this.countEntities(this.studentController.getStudents(null)));
 
         // Delete all students
         this.studentService.getAllStudents().forEach(
                 student -> this.studentService.deleteStudent(student.getId()));
 
         // Tests if controller returns an empty list
-        assertTrue(this.studentController.getStudents().isEmpty());
+        assertEquals(0, this.countEntities(this.studentController.getStudents(null)));
+    }
+
+    /**
+     * Tests that the list is served from a snapshot until a student is written
+     */
+    @Test
+    void testGetStudentsSnapshot() throws IOException {
+        IntStream.range(0, 5).forEach(i -> this.studentService.setStudent(this.createStudent()));
+        final String etag = this.studentController.getStudents(null).getHeaders().getETag();
+        assertNotNull(etag);
+
+        // Repeated reads neither query nor change the entity tag
+        final Statistics statistics = this.measure(() -> {
+            assertEquals(etag, this.studentController.getStudents(null).getHeaders().getETag());
+            assertEquals(HttpStatus.NOT_MODIFIED,
+                    this.studentController.getStudents(etag).getStatusCode());
+        });
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        // A new student replaces the snapshot
+        this.studentService.setStudent(this.createStudent());
+        final ResponseEntity<byte[]> response = this.studentController.getStudents(etag);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(etag, response.getHeaders().getETag());
+        assertEquals(6, this.countEntities(response));
+    }
+
+    /**
+     * Tests the GET-mapping methods with keyset pagination and streaming
+     */
+    @Test
+    void testGetStudentsPage() throws Exception {
+
+        // Creates and saves multiple students
+        IntStream.range(0, 25).forEach(i -> this.studentService.setStudent(this.createStudent()));
+
+        // Reads the first page and the rest after its last student
+        final List<Student> firstPage = this.studentController.getStudents(0, 10);
+        assertEquals(10, firstPage.size());
+        final List<Student> lastPage =
+                this.studentController.getStudents(firstPage.get(9).getId(), 20);
+        assertEquals(15, lastPage.size());
+        assertTrue(firstPage.get(9).getId() < lastPage.get(0).getId());
+
+        // Streams all students
+        assertEquals(25, this.countStreamedEntities(this.studentController.streamStudents()));
+
+        // It should throw an Exception if the limit is invalid
+        assertThrows(ResponseStatusException.class,
+                () -> this.studentController.getStudents(0, 0));
+
+        // A request for a page and a stream is answered with the stream
+        assertEquals("streamStudents",
+                this.getHandlerName("/api/student", "limit", "10", "stream", "true"));
     }
 
     /**
@@ -101,7 +170,14 @@ public class StudentControllerTest extends StudentManagerTest {
         student.setFirstName(name);
 
         // Tests if successfully edited the student
-        assertEquals(name, this.studentController.editStudent(student).getFirstName());
+        final Student edited = this.studentController.editStudent(student);
+        assertEquals(name, edited.getFirstName());
+
+        // A referenced employment is returned as it is saved
+        final String employmentName = edited.getEmployment().getName();
+        edited.setEmployment(Employment.builder().id(edited.getEmployment().getId()).build());
+        assertEquals(employmentName,
+                this.studentController.editStudent(edited).getEmployment().getName());
 
         // It should throw an Exception if edit with invalid properties
         student.setFirstName("");
@@ -110,6 +186,37 @@ public class StudentControllerTest extends StudentManagerTest {
                 () -> this.studentController.editStudent(student));
     }
 
+    /**
+     * Tests that an edit is a single update and fails, if the student was edited since it was read
+     */
+    @Test
+    void testEditStudentConcurrently() {
+        final Student student = this.studentService.setStudent(this.createStudent());
+        final Student outdated = this.studentService.getStudent(student.getId()).orElseThrow();
+
+        student.setFirstName("Name");
+        final Statistics statistics = this.measure(
+                () -> assertEquals(1, this.studentController.editStudent(student).getVersion()));
+
+        // The student is not read before it is updated
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // The other copy still has the first version, so its edit is rejected
+        outdated.setLastName("Name");
+        final ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> this.studentController.editStudent(outdated));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+        assertEquals("Name",
+                this.studentService.getStudent(student.getId()).orElseThrow().getFirstName());
+
+        // The new employment of a rejected edit is rolled back
+        final int employments = this.employmentService.getAllEmployments().size();
+        outdated.setEmployment(this.createEmployment());
+        assertThrows(ResponseStatusException.class,
+                () -> this.studentController.editStudent(outdated));
+        assertEquals(employments, this.employmentService.getAllEmployments().size());
+    }
+
     /**
      * Tests the DELETE-mapping method
      */
@@ -137,4 +244,86 @@ public class StudentControllerTest extends StudentManagerTest {
         assertThrows(ResponseStatusException.class,
                 () -> this.studentController.deleteStudent(Long.MAX_VALUE));
     }
+
+    /**
+     * Tests that students are found by the unique index of their names and employment
+     */
+    @Test
+    void testStudentNameIndex() {
+        this.assertIndexUsed("uk_student_name_employment", () -> this.studentRepository
+                        .findByFirstNameAndLastNameAndEmploymentId("First0", "Last0", 1L),
+                "First0", "Last0", 1L);
+    }
+
+    /**
+     * Tests the GET-mapping method for available students
+     */
+    @Test
+    void testGetAvailableStudents() {
+        final LocalDate month = LocalDate.now();
+
+        // The first student has two overlapping allocations, the second one has one allocation and
+        // the third one has none
+        final Allocation first = this.allocationService.setAllocation(this.createAllocation(1, 5));
+        this.allocationService.setAllocation(Allocation.builder()
+                .project(this.projectService.setProject(this.createProject()))
+                .period(this.periodService.setPeriod(this.createPeriod(3, 10)))
+                .student(first.getStudent()).build());
+        final Allocation other =
+                this.allocationService.setAllocation(this.createAllocation(20, 25));
+        final Student free = this.studentService.setStudent(this.createStudent());
+
+        assertEquals(List.of(first.getStudent(), other.getStudent(), free), this.studentController
+                .getAvailableStudents(month.withDayOfMonth(11), month.withDayOfMonth(19), null));
+        assertEquals(List.of(other.getStudent(), free), this.studentController
+                .getAvailableStudents(month.withDayOfMonth(4), month.withDayOfMonth(4), null));
+        assertEquals(List.of(free), this.studentController.getAvailableStudents(
+                month.withDayOfMonth(1), month.withDayOfMonth(28), null));
+
+        // The student is still allocated by the second allocation after the first is deleted
+        this.allocationService.deleteAllocation(first.getId());
+        assertEquals(List.of(other.getStudent(), free), this.studentController
+                .getAvailableStudents(month.withDayOfMonth(4), month.withDayOfMonth(4), null));
+        assertEquals(List.of(first.getStudent(), other.getStudent(), free), this.studentController
+                .getAvailableStudents(month.withDayOfMonth(1), month.withDayOfMonth(2), null));
+
+        // Shows only the students of an employment
+        assertEquals(List.of(free), this.studentController.getAvailableStudents(
+                month.withDayOfMonth(1), month.withDayOfMonth(2), free.getEmployment().getId()));
+
+        // It should throw an Exception if the period is invalid
+        assertThrows(ResponseStatusException.class, () -> this.studentController
+                .getAvailableStudents(month, month.minusDays(1), null));
+    }
+
+    /**
+     * Tests the GET-mapping method for available students with allocations over many years
+     */
+    @Test
+    void testGetAvailableStudentsOverYears() {
+        final LocalDate begin = LocalDate.of(2000, 1, 1);
+        final LocalDate end = LocalDate.of(2099, 12, 31);
+        final Project project = this.projectService.setProject(Project.builder().name("Century")
+                .period(Period.builder().begin(begin).end(end).build()).build());
+        final Allocation whole = this.allocationService.setAllocation(Allocation.builder()
+                .project(project).period(Period.builder().begin(begin).end(end).build())
+                .student(this.studentService.setStudent(this.createStudent())).build());
+        final Allocation inner = this.allocationService.setAllocation(Allocation.builder()
+                .project(project).period(Period.builder().begin(LocalDate.of(2050, 1, 1))
+                        .end(LocalDate.of(2050, 12, 31)).build())
+                .student(whole.getStudent()).build());
+        final Student free = this.studentService.setStudent(this.createStudent());
+
+        assertEquals(List.of(free), this.studentController.getAvailableStudents(
+                LocalDate.of(2050, 6, 1), LocalDate.of(2050, 6, 1), null));
+        assertEquals(List.of(whole.getStudent(), free), this.studentController
+                .getAvailableStudents(end.plusDays(1), end.plusYears(1), null));
+
+        // The inner allocation still occupies its days after the whole one is deleted
+        this.allocationService.deleteAllocation(whole.getId());
+        assertEquals(List.of(free), this.studentController.getAvailableStudents(
+                LocalDate.of(2050, 6, 1), LocalDate.of(2050, 6, 1), null));
+        assertEquals(List.of(inner.getStudent(), free), this.studentController
+                .getAvailableStudents(begin, LocalDate.of(2049, 12, 31), null));
+    }
 }
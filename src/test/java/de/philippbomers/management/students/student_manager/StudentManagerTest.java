@@ -3,14 +3,33 @@ package de.philippbomers.management.students.student_manager;
 import de.philippbomers.management.students.student_manager.controller.*;
 import de.philippbomers.management.students.student_manager.entity.*;
 import de.philippbomers.management.students.student_manager.service.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * DATA LOSS ALERT: DO NOT USE IN PRODUCTIVE ENVIRONMENT Only for development use with test database
@@ -22,7 +41,8 @@ import java.time.YearMonth;
  * test an already running system on the same port.
  */
 @TestMethodOrder(MethodOrderer.Random.class)
-@SpringBootTest
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "de.philippbomers.management.students.student_manager.SqlRecorder")
 class StudentManagerTest {
 
     // Field based injection to extend the class more comfortable
@@ -61,6 +81,18 @@ class StudentManagerTest {
     @Autowired
     protected StudentService studentService;
 
+    @Autowired
+    protected FileService fileService;
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RequestMappingHandlerMapping requestMappingHandlerMapping;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     // ID to create employments automatically
     Long employmentCreationId = 0L;
 
@@ -129,6 +161,83 @@ class StudentManagerTest {
 
     }
 
+    /**
+     * Writes a streamed response and counts the entities of its JSON array
+     *
+     * @param response of a streaming GET-mapping method
+     * @return number of entities
+     * @throws IOException if the response could not be written
+     */
+    protected int countStreamedEntities(ResponseEntity<StreamingResponseBody> response)
+            throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Objects.requireNonNull(response.getBody()).writeTo(output);
+        return new ObjectMapper().readTree(output.toByteArray()).size();
+    }
+
+    /**
+     * Finds the controller method that Spring MVC calls for a GET request
+     *
+     * @param path       of the request
+     * @param parameters names and values of the request parameters
+     * @return name of the controller method
+     * @throws Exception if no or more than one method matches
+     */
+    protected String getHandlerName(String path, String... parameters) throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        for (int i = 0; i < parameters.length; i += 2) {
+            request.addParameter(parameters[i], parameters[i + 1]);
+        }
+        ServletRequestPathUtils.parseAndCache(request);
+        final HandlerExecutionChain handler = this.requestMappingHandlerMapping.getHandler(request);
+        return ((HandlerMethod) Objects.requireNonNull(handler).getHandler()).getMethod().getName();
+    }
+
+    /**
+     * @param response of a GET-mapping method that sends a JSON array
+     * @return number of entities
+     * @throws IOException if the response is no JSON
+     */
+    protected int countEntities(ResponseEntity<byte[]> response) throws IOException {
+        return new ObjectMapper().readTree(Objects.requireNonNull(response.getBody())).size();
+    }
+
+    /**
+     * Records the SQL that a repository method generates, asks the database for its plan and
+     * checks that it searches an index instead of scanning the whole table
+     *
+     * @param index      name of the index or unique constraint
+     * @param query      calls the repository method, which must send exactly one statement
+     * @param parameters values of the parameters of the statement
+     */
+    protected void assertIndexUsed(String index, Runnable query, Object... parameters) {
+        final List<String> statements = SqlRecorder.record(query);
+        assertEquals(1, statements.size(), statements::toString);
+        final String plan = this.jdbcTemplate.queryForObject("EXPLAIN " + statements.get(0),
+                String.class, parameters);
+        assertTrue(Objects.requireNonNull(plan).contains(index.toUpperCase()), plan);
+    }
+
+    /**
+     * Runs a task with the Hibernate statistics enabled, so tests can count its statements, loads
+     * and cache hits
+     *
+     * @param task that uses the database
+     * @return statistics of the task. They are shared, so they are only valid until the next call.
+     */
+    protected Statistics measure(Runnable task) {
+        final Statistics statistics =
+                this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            task.run();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+        return statistics;
+    }
+
     /**
      * Creates an employment with differing names
      *